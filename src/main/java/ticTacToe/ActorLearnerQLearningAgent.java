@@ -0,0 +1,287 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A {@link QLearningAgent} that splits acting from learning. Several actor threads play episodes, each in its own
+ * {@link TTTEnvironment} against its own opponent, and send the transitions they observe in batches through a bounded
+ * queue to a single learner (the thread calling {@link #train()}), which is the only one to update {@link #qTable}.
+ *
+ * Actors choose their moves epsilon-greedily from a snapshot of the greedy policy (the best cell of every state) that
+ * the learner publishes every {@link #snapshotInterval} batches, so they never read the q-table while it's being
+ * written. When the learner falls behind, the queue fills up and actors block until there is room again.
+ *
+ * Actors run on a fixed thread pool.
+ *
+ */
+public class ActorLearnerQLearningAgent extends QLearningAgent {
+
+	/**
+	 * The number of actor threads
+	 */
+	int actors=Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Transitions per batch, and the number of batches the queue holds before actors block
+	 */
+	int batchSize=64;
+	int queueCapacity=16;
+
+	/**
+	 * The learner publishes a new policy snapshot every this many batches
+	 */
+	int snapshotInterval=4;
+
+	/**
+	 * Makes an opponent for each actor
+	 */
+	final Supplier<? extends Agent> opponents;
+
+	/**
+	 * The greedy cell of every state, as last published by the learner
+	 */
+	private volatile int[] snapshot;
+
+	/**
+	 * Statistics of the last call to {@link #train()}: transitions learnt from, snapshots published, and the time taken
+	 * in milliseconds
+	 */
+	long transitions;
+	int snapshots;
+	double trainTime;
+
+	/**
+	 * A batch of transitions (s, cell, reward, s') in primitive arrays, s and s' being {@link StateIndex} indexes
+	 */
+	static final class Batch
+	{
+		final int[] state;
+		final int[] cell;
+		final double[] reward;
+		final int[] next;
+		final boolean[] done;
+		int size;
+
+		/**
+		 * true for the last batch from an actor
+		 */
+		boolean last;
+
+		Batch(int capacity)
+		{
+			state=new int[capacity];
+			cell=new int[capacity];
+			reward=new double[capacity];
+			next=new int[capacity];
+			done=new boolean[capacity];
+		}
+	}
+
+	/**
+	 * Trains against random opponents with the default parameters of {@link QLearningAgent}, with one actor per
+	 * available processor
+	 */
+	public ActorLearnerQLearningAgent()
+	{
+		this(new Supplier<Agent>() {
+			public Agent get()
+			{
+				return new RandomAgent();
+			}
+		}, 0.1, 40000, 0.9, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param opponents called once per actor to make the opponent it plays against
+	 * @param learningRate
+	 * @param numEpisodes the number of episodes over all actors
+	 * @param discount
+	 * @param actors the number of actor threads
+	 */
+	public ActorLearnerQLearningAgent(Supplier<? extends Agent> opponents, double learningRate, int numEpisodes, double discount, int actors)
+	{
+		super((Policy) null);
+		if (actors<1)
+			throw new IllegalArgumentException("There should be at least 1 actor");
+
+		this.opponents=opponents;
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		this.actors=actors;
+		initQTable();
+		train();
+	}
+
+	/**
+	 * Runs the actors on a thread pool and learns from their transitions on this thread until all of them are done,
+	 * then extracts the policy.
+	 */
+	@Override
+	public void train()
+	{
+		long start=System.nanoTime();
+		transitions=0;
+		snapshots=0;
+		publishSnapshot();
+
+		final BlockingQueue<Batch> queue=new ArrayBlockingQueue<Batch>(queueCapacity);
+		ExecutorService pool=Executors.newFixedThreadPool(actors);
+		List<Future<?>> running=new ArrayList<Future<?>>();
+		try {
+			for (int a=0; a<actors; a++) {
+				final int episodes=numEpisodes/actors+(a<numEpisodes%actors ? 1 : 0);
+				final TTTEnvironment environment=new TTTEnvironment(opponents.get());
+				running.add(pool.submit(new Runnable() {
+					public void run()
+					{
+						act(environment, episodes, queue);
+					}
+				}));
+			}
+
+			int finished=0;
+			int batches=0;
+			while (finished<actors) {
+				Batch b=queue.take();
+				learn(b);
+				if (b.last)
+					finished++;
+				if (++batches%snapshotInterval==0)
+					publishSnapshot();
+			}
+
+			for (Future<?> f : running)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Actor failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		trainTime=(System.nanoTime()-start)/1e6;
+		this.policy=extractPolicy();
+	}
+
+	/**
+	 * Applies the Q-learning update for every transition in {@code b}
+	 */
+	private void learn(Batch b)
+	{
+		for (int i=0; i<b.size; i++) {
+			double nextMaxQValue=b.done[i] ? 0.0 : qTable.maxQ(b.next[i]);
+			double q=qTable.q(b.state[i], b.cell[i]);
+			qTable.setQ(b.state[i], b.cell[i], (1-alpha)*q+alpha*(b.reward[i]+discount*nextMaxQValue));
+		}
+		transitions+=b.size;
+	}
+
+	private void publishSnapshot()
+	{
+		int[] greedy=new int[index.size()];
+		for (int s=0; s<greedy.length; s++)
+			greedy[s]=qTable.argmaxQ(s);
+		snapshot=greedy;
+		snapshots++;
+	}
+
+	/**
+	 * Plays {@code episodes} episodes, sending every transition to the learner. The last batch sent is marked as such,
+	 * even if the actor fails.
+	 */
+	private void act(TTTEnvironment environment, int episodes, BlockingQueue<Batch> queue)
+	{
+		Random random=new Random();
+		Batch batch=new Batch(batchSize);
+		try {
+			for (int episode=0; episode<episodes; episode++) {
+				while (!environment.isTerminal()) {
+					int s=environment.getState();
+					int chosenCell;
+
+					// epsilon greedy, on the latest snapshot
+					if (random.nextDouble()<epsilon) {
+						int cells=index.legalCells(s);
+						for (int skip=random.nextInt(Integer.bitCount(cells)); skip>0; skip--)
+							cells&=cells-1;
+						chosenCell=Integer.numberOfTrailingZeros(cells);
+					} else
+						chosenCell=snapshot[s];
+
+					double reward=environment.step(chosenCell);
+
+					batch.state[batch.size]=s;
+					batch.cell[batch.size]=chosenCell;
+					batch.reward[batch.size]=reward;
+					batch.next[batch.size]=environment.getTargetState();
+					batch.done[batch.size]=index.isTerminal(batch.next[batch.size]);
+					if (++batch.size==batchSize) {
+						queue.put(batch);
+						batch=new Batch(batchSize);
+					}
+				}
+				environment.reset();
+			}
+		} catch (IllegalMoveException e) {
+			throw new IllegalStateException("Illegal move attempted "+e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			batch.last=true;
+			try {
+				queue.put(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of transitions the learner updated the q-table with in the last call to {@link #train()}
+	 */
+	public long getTransitions()
+	{
+		return transitions;
+	}
+
+	/**
+	 * @return the number of policy snapshots published to the actors in the last call to {@link #train()}
+	 */
+	public int getSnapshots()
+	{
+		return snapshots;
+	}
+
+	/**
+	 * @return how long the last call to {@link #train()} took, in milliseconds
+	 */
+	public double getTrainTime()
+	{
+		return trainTime;
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		ActorLearnerQLearningAgent agent=new ActorLearnerQLearningAgent();
+		System.out.println("Learnt from "+agent.getTransitions()+" transitions by "+agent.actors+" actors in "
+				+agent.getTrainTime()+"ms, "+agent.getSnapshots()+" policy snapshots");
+
+		//play the agent against a human agent.
+		HumanAgent d=new HumanAgent();
+		Game g=new Game(agent, d, d);
+		g.playOut();
+	}
+
+}
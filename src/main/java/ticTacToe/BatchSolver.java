@@ -0,0 +1,263 @@
+package ticTacToe;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Solves the Tic-Tac-Toe MDP for many (discount, win, lose, living, draw) configurations at once, e.g. for reward
+ * shaping studies.
+ *
+ * The MDP is compiled only once (see {@link TTTMDP#compile()}): every configuration shares its states, actions,
+ * transitions and probabilities, and only gets its own reward array (see {@link CompiledMDP#withRewards(TTTMDP)}) and
+ * value array. The configurations are then solved in parallel, each with in-place (Gauss-Seidel) value iteration until
+ * the Bellman residual drops below {@link #epsilon}.
+ *
+ */
+public class BatchSolver {
+
+	/**
+	 * One set of MDP parameters
+	 */
+	public static class Config {
+		public final double discount;
+		public final double winReward;
+		public final double loseReward;
+		public final double livingReward;
+		public final double drawReward;
+
+		public Config(double discount, double winReward, double loseReward, double livingReward, double drawReward)
+		{
+			this.discount=discount;
+			this.winReward=winReward;
+			this.loseReward=loseReward;
+			this.livingReward=livingReward;
+			this.drawReward=drawReward;
+		}
+
+		public TTTMDP toMDP()
+		{
+			return new TTTMDP(winReward, loseReward, livingReward, drawReward);
+		}
+
+		public String toString()
+		{
+			return "discount="+discount+" win="+winReward+" lose="+loseReward+" living="+livingReward+" draw="+drawReward;
+		}
+	}
+
+	/**
+	 * The solution of one configuration and some summary statistics
+	 */
+	public static class Result {
+		public final Config config;
+
+		/**
+		 * the model the configuration was solved on, and the optimal value and action id of every state
+		 */
+		final CompiledMDP model;
+		final double[] values;
+		final int[] actions;
+
+		/**
+		 * the number of sweeps done and the Bellman residual of the last one
+		 */
+		public final int sweeps;
+		public final double residual;
+
+		/**
+		 * the value of the empty board with X to move
+		 */
+		public final double startValue;
+
+		/**
+		 * how long solving took, in milliseconds
+		 */
+		public final double solveTime;
+
+		Result(Config config, CompiledMDP model, double[] values, int[] actions, int sweeps, double residual, double solveTime)
+		{
+			this.config=config;
+			this.model=model;
+			this.values=values;
+			this.actions=actions;
+			this.sweeps=sweeps;
+			this.residual=residual;
+			this.startValue=values[StateIndex.get().indexOfHash(1)];
+			this.solveTime=solveTime;
+		}
+
+		/**
+		 * @return the optimal policy for this configuration. A new {@link Policy} is built on every call.
+		 */
+		public Policy getPolicy()
+		{
+			return model.toPolicy(actions);
+		}
+
+		/**
+		 * @return the optimal value of game {@code g}, 0 if it is not a state of the MDP
+		 */
+		public double getValue(Game g)
+		{
+			int s=StateIndex.get().indexOf(g);
+			return s<0 ? 0.0 : values[s];
+		}
+
+		public String toString()
+		{
+			return config+": V(start)="+startValue+" sweeps="+sweeps+" residual="+residual+" time="+solveTime+"ms";
+		}
+	}
+
+	/**
+	 * Stop sweeping a configuration once no value changes by more than this
+	 */
+	double epsilon=1e-9;
+
+	/**
+	 * Upper bound on the number of sweeps per configuration
+	 */
+	int maxSweeps=1000;
+
+	/**
+	 * The number of configurations solved at the same time
+	 */
+	int parallelism=Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The opponent every configuration is solved against
+	 */
+	final OpponentModel opponent;
+
+	/**
+	 * The shared model, compiled on first use
+	 */
+	private CompiledMDP structure;
+
+
+	public BatchSolver()
+	{
+		this(OpponentModel.uniform());
+	}
+
+	/**
+	 * @param opponent the opponent to solve every configuration against, see {@link TTTMDP#TTTMDP(OpponentModel)}
+	 */
+	public BatchSolver(OpponentModel opponent)
+	{
+		this.opponent=opponent;
+	}
+
+	/**
+	 * @param parallelism the number of configurations to solve at the same time
+	 */
+	public BatchSolver(int parallelism)
+	{
+		if (parallelism<1)
+			throw new IllegalArgumentException("Parallelism should be at least 1");
+
+		this.opponent=OpponentModel.uniform();
+		this.parallelism=parallelism;
+	}
+
+	/**
+	 * @return every combination of the given parameter values, discount varying slowest and draw reward fastest
+	 */
+	public static List<Config> grid(double[] discounts, double[] winRewards, double[] loseRewards, double[] livingRewards, double[] drawRewards)
+	{
+		List<Config> configs=new ArrayList<Config>();
+		for (double discount : discounts)
+			for (double win : winRewards)
+				for (double lose : loseRewards)
+					for (double living : livingRewards)
+						for (double draw : drawRewards)
+							configs.add(new Config(discount, win, lose, living, draw));
+		return configs;
+	}
+
+	/**
+	 * Solves all {@code configs} in parallel.
+	 * @param configs
+	 * @return one result per configuration, in the same order
+	 */
+	public List<Result> solve(List<Config> configs)
+	{
+		if (structure==null)
+			structure=new TTTMDP(opponent).compile();
+
+		List<Callable<Result>> tasks=new ArrayList<Callable<Result>>();
+		for (final Config c : configs)
+			tasks.add(new Callable<Result>() {
+				public Result call()
+				{
+					return solve(c);
+				}
+			});
+
+		ForkJoinPool pool=new ForkJoinPool(parallelism);
+		try {
+			List<Result> results=new ArrayList<Result>();
+			for (Future<Result> f : pool.invokeAll(tasks))
+				results.add(f.get());
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while solving", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Solving failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Solves a single configuration on the shared model
+	 */
+	private Result solve(Config c)
+	{
+		long start=System.nanoTime();
+		CompiledMDP model=structure.withRewards(c.toMDP());
+		int[] states=model.decisionStates();
+		double[] values=new double[model.numStates()];
+
+		int sweeps=0;
+		double residual=Double.POSITIVE_INFINITY;
+		while (sweeps<maxSweeps && residual>=epsilon) {
+			residual=0.0;
+			// in place, from the fullest boards back, see ValueIterationAgent#inPlace
+			for (int i=states.length-1; i>=0; i--) {
+				int s=states[i];
+				double v=model.backup(s, values, c.discount);
+				residual=Math.max(residual, Math.abs(v-values[s]));
+				values[s]=v;
+			}
+			sweeps++;
+		}
+
+		int[] actions=new int[values.length];
+		Arrays.fill(actions, -1);
+		for (int s : states)
+			actions[s]=model.greedyAction(s, values, c.discount);
+
+		return new Result(c, model, values, actions, sweeps, residual, (System.nanoTime()-start)/1e6);
+	}
+
+	public static void main(String[] args)
+	{
+		List<Config> configs=grid(new double[] { 0.5, 0.9, 0.99 }, new double[] { 1, 10 }, new double[] { -10, -50 },
+				new double[] { -1, 0 }, new double[] { 0, 1 });
+
+		long start=System.nanoTime();
+		List<Result> results=new BatchSolver().solve(configs);
+		System.out.println("Solved "+results.size()+" configurations in "+(System.nanoTime()-start)/1e6+"ms");
+		for (Result r : results)
+			System.out.println(r);
+	}
+
+}
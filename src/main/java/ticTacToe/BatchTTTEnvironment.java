@@ -0,0 +1,213 @@
+package ticTacToe;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A batched version of {@link TTTEnvironment}: it runs many games ("lanes") side by side and steps all of them with one
+ * call to {@link #step(int[])}. As in {@link TTTEnvironment}, the learning agent plays X and the opponent, O, is part of
+ * the environment, and each step is X's move followed by O's reply.
+ *
+ * The environment is held in primitive arrays, one entry per lane: the current state (a {@link StateIndex} index), and
+ * the reward, next state and done flag observed by the last step. Nothing is allocated per step. A lane whose game ends
+ * is reset to the empty board straight away, so {@link #states()} is always ready for the next step, while
+ * {@link #nextStates()} still shows the terminal state the game ended in.
+ *
+ * The opponent is given as an {@link OpponentModel}, so its moves for all lanes are worked out from the bitboards and
+ * sampled, without building {@link Game} objects.
+ *
+ */
+public class BatchTTTEnvironment {
+
+	double winReward=10.0;
+	double loseReward=-50.0;
+	double livingReward=-1.00;
+	double drawReward=0.0;
+
+	final StateIndex index=StateIndex.get();
+	final OpponentModel opponent;
+	final SplittableRandom random=new SplittableRandom();
+
+	/**
+	 * The empty board with X to move
+	 */
+	final int start;
+
+	/**
+	 * Per lane: the state X moves in next, and the reward, next state and whether the game ended, from the last step
+	 */
+	final int[] state;
+	final double[] reward;
+	final int[] nextState;
+	final boolean[] done;
+
+	/**
+	 * The opponent's move distribution, reused for every lane
+	 */
+	private final double[] probs=new double[9];
+
+	/**
+	 * {@code lanes} games against a random opponent
+	 * @param lanes
+	 */
+	public BatchTTTEnvironment(int lanes)
+	{
+		this(lanes, OpponentModel.uniform());
+	}
+
+	public BatchTTTEnvironment(int lanes, OpponentModel opponent)
+	{
+		if (lanes<1)
+			throw new IllegalArgumentException("There should be at least 1 lane");
+
+		this.opponent=opponent;
+		this.start=index.indexOfHash(1);
+		state=new int[lanes];
+		reward=new double[lanes];
+		nextState=new int[lanes];
+		done=new boolean[lanes];
+		reset();
+	}
+
+	public BatchTTTEnvironment(int lanes, OpponentModel opponent, double winReward, double loseReward, double livingReward, double drawReward)
+	{
+		this(lanes, opponent);
+		this.winReward=winReward;
+		this.loseReward=loseReward;
+		this.livingReward=livingReward;
+		this.drawReward=drawReward;
+	}
+
+	/**
+	 * Puts every lane back to the empty board
+	 */
+	public void reset()
+	{
+		Arrays.fill(state, start);
+		Arrays.fill(nextState, start);
+		Arrays.fill(reward, 0.0);
+		Arrays.fill(done, false);
+	}
+
+	/**
+	 * Plays X's move {@code cells[lane]} (3*x+y) in every lane, and then the opponent's reply where the game isn't over.
+	 * Afterwards {@link #rewards()}, {@link #nextStates()} and {@link #dones()} hold what each lane observed, and lanes
+	 * whose game ended are back at the empty board in {@link #states()}.
+	 *
+	 * @param cells X's move for every lane
+	 * @throws IllegalMoveException if a move is not legal in its lane; no lane is stepped then
+	 */
+	public void step(int[] cells) throws IllegalMoveException
+	{
+		if (cells.length!=state.length)
+			throw new IllegalArgumentException("Need one move per lane");
+
+		// check every move before stepping any lane, so a bad batch leaves them all as they were
+		for (int lane=0; lane<state.length; lane++)
+			if (cells[lane]<0 || cells[lane]>8 || index.successor(state[lane], cells[lane])<0)
+				throw new IllegalMoveException("Illegal Move: cell "+cells[lane]+" in lane "+lane);
+
+		for (int lane=0; lane<state.length; lane++) {
+			int s=index.successor(state[lane], cells[lane]);
+			if (!index.isTerminal(s)) {
+				// the opponent replies
+				opponent.moveDistribution(index.xBits(s), index.oBits(s), 'O', probs);
+				s=index.successor(s, OpponentModel.sample(probs, random.nextDouble()));
+			}
+
+			nextState[lane]=s;
+			reward[lane]=reward(index.status(s));
+			done[lane]=index.isTerminal(s);
+			state[lane]=done[lane] ? start : s;
+		}
+	}
+
+	private double reward(int status)
+	{
+		switch (status)
+		{
+		case Game.X_WON:
+			return winReward;
+		case Game.O_WON:
+			return loseReward;
+		case Game.DRAW:
+			return drawReward;
+		default:
+			return livingReward;
+		}
+	}
+
+	public int lanes()
+	{
+		return state.length;
+	}
+
+	/**
+	 * @return the state (a {@link StateIndex} index) X moves in next, per lane. Don't modify the returned array.
+	 */
+	public int[] states()
+	{
+		return state;
+	}
+
+	/**
+	 * @return the state each lane was left in by the last step, including terminal states. Don't modify the returned
+	 *         array.
+	 */
+	public int[] nextStates()
+	{
+		return nextState;
+	}
+
+	/**
+	 * @return the reward each lane got in the last step. Don't modify the returned array.
+	 */
+	public double[] rewards()
+	{
+		return reward;
+	}
+
+	/**
+	 * @return whether the game in each lane ended in the last step. Don't modify the returned array.
+	 */
+	public boolean[] dones()
+	{
+		return done;
+	}
+
+	/**
+	 * @return the mask of cells X can play in {@code lane}
+	 */
+	public int legalCells(int lane)
+	{
+		return index.legalCells(state[lane]);
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		// random X against a random opponent, to measure the steps per second
+		int lanes=1024;
+		int steps=10000;
+		BatchTTTEnvironment env=new BatchTTTEnvironment(lanes);
+		SplittableRandom random=new SplittableRandom();
+		int[] cells=new int[lanes];
+		long games=0;
+
+		long start=System.nanoTime();
+		for (int i=0; i<steps; i++) {
+			for (int lane=0; lane<lanes; lane++) {
+				int legal=env.legalCells(lane);
+				for (int skip=random.nextInt(Integer.bitCount(legal)); skip>0; skip--)
+					legal&=legal-1;
+				cells[lane]=Integer.numberOfTrailingZeros(legal);
+			}
+			env.step(cells);
+			for (boolean d : env.dones())
+				if (d)
+					games++;
+		}
+		double time=(System.nanoTime()-start)/1e9;
+		System.out.println((long) lanes*steps/time+" steps per second, "+games+" games");
+	}
+
+}
@@ -0,0 +1,356 @@
+package ticTacToe;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A {@link TTTMDP} compiled into flat arrays over the {@link StateIndex}, so that solvers can run Bellman backups with
+ * primitive loops instead of calling {@link TTTMDP#generateTransitions} (and allocating lists of {@link TransitionProb}s
+ * and cloned {@link Game}s) for every state, move and sweep.
+ *
+ * The layout is CSR-like, in two levels:
+ * (1) the actions of state {@code s} (a {@link StateIndex} index) are {@code actionStart[s]} to {@code actionStart[s+1]-1},
+ * and {@code actionCell[a]} is the cell (3*x+y) played by action {@code a};
+ * (2) the transitions of action {@code a} are {@code transStart[a]} to {@code transStart[a+1]-1}, transition {@code t}
+ * leading to state {@code succ[t]} with probability {@code prob[t]} and reward {@code reward[t]}.
+ *
+ * States where the planning agent doesn't move (terminal states, or states where it's the opponent's turn) have no actions.
+ * Value arrays used with this class are indexed by state and have length {@link #numStates()}.
+ *
+ * Use {@link TTTMDP#compile()} to build one.
+ *
+ */
+public class CompiledMDP {
+
+	final StateIndex index;
+
+	/**
+	 * true if only canonical states have actions, and all successors are mapped to their canonical form
+	 */
+	final boolean symmetric;
+
+	final int[] actionStart;
+	final byte[] actionCell;
+	final int[] transStart;
+	final int[] succ;
+	final double[] prob;
+	final double[] reward;
+
+	/**
+	 * the states with at least one action, in index order
+	 */
+	final int[] decisionStates;
+
+	/**
+	 * Predecessor links, built on first use by {@link #predecessorsStart(int)}: the decision states with an action that
+	 * can lead to state {@code s} are {@code pred[predStart[s]]} to {@code pred[predStart[s+1]-1]}.
+	 */
+	private volatile int[] predStart;
+	private int[] pred;
+
+	/**
+	 * Compiles {@code mdp} by querying {@link TTTMDP#generateTransitions} once for every decision state and move.
+	 *
+	 * @param mdp
+	 * @param symmetric if true only canonical states are compiled, see {@link Game#canonical()}.
+	 */
+	CompiledMDP(TTTMDP mdp, boolean symmetric) {
+		this.index = StateIndex.get();
+		this.symmetric = symmetric;
+
+		int n = index.size();
+		actionStart = new int[n + 1];
+
+		int numActions = 0;
+		int numTrans = 0;
+		int numDecision = 0;
+		byte[] cells = new byte[9 * n];
+		int[] tStart = new int[9 * n + 1];
+		int[] s2 = new int[16 * n];
+		double[] p = new double[16 * n];
+		double[] r = new double[16 * n];
+		int[] decision = new int[n];
+
+		for (int s = 0; s < n; s++) {
+			actionStart[s] = numActions;
+			if (!mdp.isDecisionState(index, s) || (symmetric && !index.isCanonical(s)))
+				continue;
+
+			decision[numDecision++] = s;
+			Game g = index.game(s);
+			for (Move m : g.getPossibleMoves()) {
+				cells[numActions] = (byte) (3 * m.x + m.y);
+				tStart[numActions] = numTrans;
+				numActions++;
+
+				for (TransitionProb tp : mdp.generateTransitions(g, m)) {
+					if (numTrans == s2.length) {
+						s2 = Arrays.copyOf(s2, 2 * numTrans);
+						p = Arrays.copyOf(p, 2 * numTrans);
+						r = Arrays.copyOf(r, 2 * numTrans);
+					}
+					int target = index.indexOf(tp.outcome.sPrime);
+					s2[numTrans] = symmetric ? index.canonical(target) : target;
+					p[numTrans] = tp.prob;
+					r[numTrans] = tp.outcome.localReward;
+					numTrans++;
+				}
+			}
+		}
+		actionStart[n] = numActions;
+		tStart[numActions] = numTrans;
+
+		actionCell = Arrays.copyOf(cells, numActions);
+		transStart = Arrays.copyOf(tStart, numActions + 1);
+		succ = Arrays.copyOf(s2, numTrans);
+		prob = Arrays.copyOf(p, numTrans);
+		reward = Arrays.copyOf(r, numTrans);
+		decisionStates = Arrays.copyOf(decision, numDecision);
+	}
+
+	/**
+	 * A model with the same states, actions and transitions as {@code structure}, sharing its arrays, but with rewards
+	 * from {@code rewards}.
+	 */
+	private CompiledMDP(CompiledMDP structure, double[] rewards) {
+		this.index = structure.index;
+		this.symmetric = structure.symmetric;
+		this.actionStart = structure.actionStart;
+		this.actionCell = structure.actionCell;
+		this.transStart = structure.transStart;
+		this.succ = structure.succ;
+		this.prob = structure.prob;
+		this.reward = rewards;
+		this.decisionStates = structure.decisionStates;
+		this.predStart = structure.predStart;
+		this.pred = structure.pred;
+	}
+
+	/**
+	 * Re-prices this model with the rewards of {@code mdp}. The states, actions, transitions and probabilities are
+	 * shared with this model, only a new reward array is built, so this is much cheaper than compiling {@code mdp}. The
+	 * reward of each transition is worked out from the game state it leads to, see {@link TTTMDP#reward(int, char)}, so
+	 * {@code mdp} must only differ from the compiled MDP in its rewards.
+	 *
+	 * @param mdp
+	 * @return a model with the rewards of {@code mdp}
+	 */
+	public CompiledMDP withRewards(TTTMDP mdp) {
+		double[] rewards = new double[reward.length];
+		for (int s : decisionStates) {
+			char planner = index.whoseTurn(s);
+			for (int t = transStart[actionStart[s]]; t < transStart[actionStart[s + 1]]; t++)
+				rewards[t] = mdp.reward(index.status(succ[t]), planner);
+		}
+		return new CompiledMDP(this, rewards);
+	}
+
+	/**
+	 * @return the length of value arrays for this model, i.e. the size of the {@link StateIndex}
+	 */
+	public int numStates() {
+		return actionStart.length - 1;
+	}
+
+	public int numActions() {
+		return actionCell.length;
+	}
+
+	public int numTransitions() {
+		return succ.length;
+	}
+
+	/**
+	 * @return the states where the planning agent has a move to make, in index order. Don't modify the returned array.
+	 */
+	public int[] decisionStates() {
+		return decisionStates;
+	}
+
+	/**
+	 * Q(s,a) = sum over transitions of T(s,a,s') * (R(s,a,s') + discount * V(s'))
+	 *
+	 * @param a an action id
+	 * @param v the state values
+	 * @param discount
+	 * @return the q-value of action {@code a} under values {@code v}
+	 */
+	public double qValue(int a, double[] v, double discount) {
+		double q = 0.0;
+		for (int t = transStart[a]; t < transStart[a + 1]; t++)
+			q += prob[t] * (reward[t] + discount * v[succ[t]]);
+		return q;
+	}
+
+	/**
+	 * A single Bellman backup: V(s) = max over actions of Q(s,a)
+	 *
+	 * @return the backed up value of {@code s}; 0 if {@code s} has no actions (e.g. it is terminal)
+	 */
+	public double backup(int s, double[] v, double discount) {
+		int first = actionStart[s];
+		int last = actionStart[s + 1];
+		if (first == last)
+			return 0.0;
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (int a = first; a < last; a++) {
+			double q = qValue(a, v, discount);
+			if (q > max)
+				max = q;
+		}
+		return max;
+	}
+
+	/**
+	 * @return the action id maximising Q(s,a) under {@code v} (the first one in case of ties), or -1 if {@code s} has
+	 *         no actions
+	 */
+	public int greedyAction(int s, double[] v, double discount) {
+		int best = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+			double q = qValue(a, v, discount);
+			if (q > max) {
+				max = q;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the first action id of state {@code s}; the actions of s run up to {@link #actionEnd(int)} exclusive
+	 */
+	public int actionStart(int s) {
+		return actionStart[s];
+	}
+
+	public int actionEnd(int s) {
+		return actionStart[s + 1];
+	}
+
+	/**
+	 * @return the cell (3*x+y) played by action {@code a}
+	 */
+	public int actionCell(int a) {
+		return actionCell[a];
+	}
+
+	/**
+	 * Turns a per-state choice of action into a {@link Policy} over {@link Game}s. States with no action chosen (-1)
+	 * are left out. If this model is symmetric a {@link SymmetricPolicy} is returned.
+	 *
+	 * @param actions action id for every state
+	 */
+	public Policy toPolicy(int[] actions) {
+		HashMap<Game, Move> map = toPolicyMap(actions);
+		return symmetric ? new SymmetricPolicy(map) : new Policy(map);
+	}
+
+	/**
+	 * @see #toPolicy(int[])
+	 */
+	public HashMap<Game, Move> toPolicyMap(int[] actions) {
+		HashMap<Game, Move> map = new HashMap<Game, Move>();
+		for (int s : decisionStates) {
+			if (actions[s] < 0)
+				continue;
+
+			Game g = index.game(s);
+			int cell = actionCell[actions[s]];
+			map.put(g, new Move(g.whoseTurn, cell / 3, cell % 3));
+		}
+		return map;
+	}
+
+	/**
+	 * @return the greedy policy with respect to values {@code v}
+	 */
+	public Policy extractPolicy(double[] v, double discount) {
+		int[] actions = new int[numStates()];
+		Arrays.fill(actions, -1);
+		for (int s : decisionStates)
+			actions[s] = greedyAction(s, v, discount);
+		return toPolicy(actions);
+	}
+
+	/**
+	 * @return the index into {@link #predecessor(int)} of the first predecessor of {@code s}, i.e. of the first decision
+	 *         state with some action that can lead to {@code s}. The predecessors of s end at
+	 *         {@code predecessorsStart(s+1)} exclusive.
+	 */
+	public int predecessorsStart(int s) {
+		if (predStart == null)
+			buildPredecessors();
+		return predStart[s];
+	}
+
+	public int predecessor(int i) {
+		return pred[i];
+	}
+
+	private synchronized void buildPredecessors() {
+		if (predStart != null)
+			return;
+
+		// each decision state is listed once per successor, however many of its actions lead there
+		int n = numStates();
+		int[] lastSeenFrom = new int[n];
+		Arrays.fill(lastSeenFrom, -1);
+		int[] count = new int[n + 1];
+		for (int s : decisionStates)
+			for (int t = transStart[actionStart[s]]; t < transStart[actionStart[s + 1]]; t++)
+				if (lastSeenFrom[succ[t]] != s) {
+					lastSeenFrom[succ[t]] = s;
+					count[succ[t] + 1]++;
+				}
+
+		int[] start = new int[n + 1];
+		for (int s = 0; s < n; s++)
+			start[s + 1] = start[s] + count[s + 1];
+
+		int[] links = new int[start[n]];
+		int[] fill = Arrays.copyOf(start, n);
+		Arrays.fill(lastSeenFrom, -1);
+		for (int s : decisionStates)
+			for (int t = transStart[actionStart[s]]; t < transStart[actionStart[s + 1]]; t++)
+				if (lastSeenFrom[succ[t]] != s) {
+					lastSeenFrom[succ[t]] = s;
+					links[fill[succ[t]]++] = s;
+				}
+
+		pred = links;
+		predStart = start;
+	}
+
+	/**
+	 * @return the value of game {@code g} in {@code v}, looked up through its canonical form if the model is symmetric;
+	 *         0 if g can't be reached from an empty board
+	 */
+	public double value(double[] v, Game g) {
+		int s = index.indexOf(g);
+		if (s < 0)
+			return 0.0;
+		return v[symmetric ? index.canonical(s) : s];
+	}
+
+	/**
+	 * @return a map from {@link Game}s to their values for every state that is a decision state or the successor of one
+	 */
+	public HashMap<Game, Double> toValueMap(double[] v) {
+		boolean[] covered = new boolean[numStates()];
+		for (int s : decisionStates)
+			covered[s] = true;
+		for (int t = 0; t < succ.length; t++)
+			covered[succ[t]] = true;
+
+		HashMap<Game, Double> map = new HashMap<Game, Double>();
+		for (int s = 0; s < covered.length; s++)
+			if (covered[s])
+				map.put(index.game(s), v[s]);
+		return map;
+	}
+
+}
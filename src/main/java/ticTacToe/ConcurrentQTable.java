@@ -0,0 +1,99 @@
+package ticTacToe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link QTable} that many threads can read and update at once without locking, for Hogwild-style parallel
+ * Q-learning (see {@link ParallelQLearningAgent}).
+ *
+ * It has the same layout as {@link QTable} (Q(s, cell) at {@code 9*s+cell}, NaN if not set), but the doubles are stored
+ * as their bit patterns in an {@link AtomicLongArray}. Single reads and writes are atomic, and
+ * {@link #update(int, int, double, double)} applies a Q-learning update with a compare-and-set loop, so no update is
+ * lost. Reading a whole row, as {@link #maxQ(int)} does, is not atomic: other threads may update the row meanwhile,
+ * which Hogwild tolerates.
+ *
+ */
+public class ConcurrentQTable {
+
+	final AtomicLongArray values;
+
+	/**
+	 * A table holding the q-values of {@code table}
+	 * @param table
+	 */
+	public ConcurrentQTable(QTable table)
+	{
+		values=new AtomicLongArray(table.values.length);
+		for (int i=0; i<table.values.length; i++)
+			values.set(i, Double.doubleToRawLongBits(table.values[i]));
+	}
+
+	/**
+	 * @return Q(s, cell), NaN if it isn't in the table
+	 */
+	public double q(int s, int cell)
+	{
+		return Double.longBitsToDouble(values.get(9*s+cell));
+	}
+
+	public void setQ(int s, int cell, double v)
+	{
+		values.set(9*s+cell, Double.doubleToRawLongBits(v));
+	}
+
+	/**
+	 * Atomically sets Q(s, cell) to {@code (1-alpha)*Q(s, cell) + alpha*target}
+	 */
+	public void update(int s, int cell, double alpha, double target)
+	{
+		int i=9*s+cell;
+		long current;
+		long updated;
+		do {
+			current=values.get(i);
+			double q=Double.longBitsToDouble(current);
+			updated=Double.doubleToRawLongBits((1-alpha)*q+alpha*target);
+		} while (!values.compareAndSet(i, current, updated));
+	}
+
+	/**
+	 * @return the largest q-value of state {@code s}, negative infinity if it has none
+	 */
+	public double maxQ(int s)
+	{
+		double max=Double.NEGATIVE_INFINITY;
+		for (int cell=0; cell<9; cell++) {
+			double v=q(s, cell);
+			if (v>max)
+				max=v;
+		}
+		return max;
+	}
+
+	/**
+	 * @return the cell with the largest q-value in state {@code s} (the first one in case of ties), or -1 if it has none
+	 */
+	public int argmaxQ(int s)
+	{
+		int best=-1;
+		double max=Double.NEGATIVE_INFINITY;
+		for (int cell=0; cell<9; cell++) {
+			double v=q(s, cell);
+			if (v>max) {
+				max=v;
+				best=cell;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Copies all q-values into {@code table}. Should only be called while no thread is updating this table.
+	 */
+	public void copyTo(QTable table)
+	{
+		for (int i=0; i<table.values.length; i++)
+			table.values[i]=Double.longBitsToDouble(values.get(i));
+	}
+
+}
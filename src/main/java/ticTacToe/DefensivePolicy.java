@@ -19,7 +19,7 @@ public Move getMove(Game g) {
 		for(Move m: moves)
 		{
 			Game resulting=g.clone();
-			resulting.getBoard()[m.x][m.y]=m.who.getName();
+			resulting.setCell(m.x, m.y, m.who.getName());
 			resulting.evaluateGameState();
 			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
 			{
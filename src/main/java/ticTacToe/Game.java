@@ -36,7 +36,37 @@ public class Game {
 	 */
 	int state = 0;
 
-	char[][] board = new char[3][3];
+	/**
+	 * The board is stored as two 9-bit masks, one per side. Cell (i, j) maps to
+	 * bit {@code 3*i+j}, i.e. the same row-major order used by
+	 * {@link #hashCode()} and by the {@link HumanAgent} input scheme.
+	 */
+	int xBits = 0;
+	int oBits = 0;
+
+	/**
+	 * The board part of {@link #hashCode()} (everything but the whose-turn
+	 * digit). Kept up to date on every change to the bitboards so hashing is a
+	 * field read.
+	 */
+	int boardHash = 0;
+
+	/**
+	 * CELL_WEIGHT[c] is the base 3 place value of cell c in {@link #hashCode()},
+	 * i.e. 3^(9-c).
+	 */
+	static final int[] CELL_WEIGHT = { 19683, 6561, 2187, 729, 243, 81, 27, 9, 3 };
+
+	/**
+	 * Mask with all 9 cells set
+	 */
+	public static final int FULL_BOARD = 0x1FF;
+
+	/**
+	 * The 8 winning lines as cell masks: the three rows, the three columns, then
+	 * the two diagonals.
+	 */
+	static final int[] LINES = { 0x007, 0x038, 0x1C0, 0x049, 0x092, 0x124, 0x111, 0x054 };
 
 	/**
 	 * the X agent
@@ -116,20 +146,108 @@ public class Game {
 		this.whoseTurn = g.whoseTurn;
 		// WARNING: Currently Agents are not deep copied
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				this.board[i][j] = g.board[i][j];
+		this.xBits = g.xBits;
+		this.oBits = g.oBits;
+		this.boardHash = g.boardHash;
+		this.state = g.state;
 
 	}
 
 	public void initBoard() {
-		// fill the board with e's (empty cells)
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				board[i][j] = ' ';
+		// empty board
+		xBits = 0;
+		oBits = 0;
+		boardHash = 0;
 
 	}
 
+	/**
+	 * Starts a new game on this object: empties the board and gives the turn to
+	 * {@code whoseTurn}, keeping the same agents.
+	 */
+	void restart(Agent whoseTurn) {
+		initBoard();
+		this.whoseTurn = whoseTurn;
+		this.state = ONGOING;
+	}
+
+	/**
+	 * Makes this game a copy of {@code g}, as {@link #Game(Game)} does, without
+	 * allocating a new object.
+	 */
+	void copyFrom(Game g) {
+		this.x = g.x;
+		this.o = g.o;
+		this.whoseTurn = g.whoseTurn;
+		this.xBits = g.xBits;
+		this.oBits = g.oBits;
+		this.boardHash = g.boardHash;
+		this.state = g.state;
+	}
+
+	/**
+	 * @return the bit of cell (x, y) in the board masks
+	 */
+	static int bit(int x, int y) {
+		return 1 << (3 * x + y);
+	}
+
+	/**
+	 * @return mask of cells occupied by X
+	 */
+	public int getXBits() {
+		return xBits;
+	}
+
+	/**
+	 * @return mask of cells occupied by O
+	 */
+	public int getOBits() {
+		return oBits;
+	}
+
+	/**
+	 * @return mask of the empty cells
+	 */
+	public int getEmptyBits() {
+		return ~(xBits | oBits) & FULL_BOARD;
+	}
+
+	/**
+	 * @return 'X', 'O' or ' ' for the contents of cell (x, y)
+	 */
+	public char getCell(int x, int y) {
+		int b = bit(x, y);
+		if ((xBits & b) != 0)
+			return 'X';
+		if ((oBits & b) != 0)
+			return 'O';
+		return ' ';
+	}
+
+	/**
+	 * Writes xo ('X', 'O' or ' ') into cell (x, y) without switching turns or
+	 * re-evaluating the game state.
+	 */
+	void setCell(int x, int y, char xo) {
+		int b = bit(x, y);
+		int weight = CELL_WEIGHT[3 * x + y];
+		if ((xBits & b) != 0)
+			boardHash -= weight;
+		else if ((oBits & b) != 0)
+			boardHash -= 2 * weight;
+		xBits &= ~b;
+		oBits &= ~b;
+		if (xo == 'X') {
+			xBits |= b;
+			boardHash += weight;
+		} else if (xo == 'O') {
+			oBits |= b;
+			boardHash += 2 * weight;
+		} else if (xo != ' ')
+			throw new IllegalArgumentException("Cell can only be 'X', 'O' or ' '");
+	}
+
 	public boolean isLegal(Move m) {
 		if (m.x < 0 || m.x > 2 || m.y < 0 || m.y > 2)
 			return false;
@@ -138,7 +256,7 @@ public class Game {
 			return false;
 		}
 
-		if (board[m.x][m.y] != ' ')
+		if (((xBits | oBits) & bit(m.x, m.y)) != 0)
 			return false;
 
 		return true;
@@ -152,20 +270,14 @@ public class Game {
 	 */
 	public List<Game> getAllSuccessorGames() {
 		List<Game> result = new ArrayList<Game>();
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					Game newGame = null;
-					try {
-						newGame = this.simulateMove(whoseTurn.getName(), i, j);
-					} catch (IllegalMoveException e) {
-						System.out.println(e.getMessage());
-						e.printStackTrace();
-					}
-					// System.out.println("Adding:\n"+newGame);
-					result.add(newGame);
-				}
+		int empty = getEmptyBits();
+		for (int cell = 0; cell < 9; cell++) {
+			if ((empty & (1 << cell)) != 0) {
+				Game next = place(cell);
+				next.evaluateGameState();
+				result.add(next);
 			}
+		}
 
 		return result;
 
@@ -214,11 +326,11 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move(whoseTurn, i, j));
-			}
+		int empty = getEmptyBits();
+		for (int cell = 0; cell < 9; cell++) {
+			if ((empty & (1 << cell)) != 0)
+				possibleMoves.add(new Move(whoseTurn, cell / 3, cell % 3));
+		}
 
 		return possibleMoves;
 
@@ -236,17 +348,27 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move((whoseTurn.getName() == 'X') ? 'O' : 'X', i, j));
-			}
+		char opponent = (whoseTurn.getName() == 'X') ? 'O' : 'X';
+		int empty = getEmptyBits();
+		for (int cell = 0; cell < 9; cell++) {
+			if ((empty & (1 << cell)) != 0)
+				possibleMoves.add(new Move(opponent, cell / 3, cell % 3));
+		}
 
 		return possibleMoves;
 
 	}
 
+	/**
+	 * The board as a 3x3 char array of 'X', 'O' and ' '. This is a new copy
+	 * built from the bitboards on every call: writing into it does NOT change
+	 * the game, use {@link #executeMove(Move)} for that.
+	 */
 	public char[][] getBoard() {
+		char[][] board = new char[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				board[i][j] = getCell(i, j);
 		return board;
 	}
 
@@ -255,7 +377,7 @@ public class Game {
 		for (int i = 0; i < 3; i++) {
 			result += "|";
 			for (int j = 0; j < 3; j++) {
-				result += board[i][j] + "|";
+				result += getCell(i, j) + "|";
 
 			}
 			result += "\n";
@@ -274,113 +396,33 @@ public class Game {
 	 */
 	public int evaluateGameState() {
 
-		// checking columns
-		if (board[0][0] != ' ' && board[0][0] == board[0][1] && board[0][1] == board[0][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[1][0] != ' ' && board[1][0] == board[1][1] && board[1][1] == board[1][2]) {
-			if (board[1][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[2][0] != ' ' && board[2][0] == board[2][1] && board[2][1] == board[2][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking rows
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][0] && board[1][0] == board[2][0]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][1] != ' ' && board[0][1] == board[1][1] && board[1][1] == board[2][1]) {
-			if (board[0][1] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][2] != ' ' && board[0][2] == board[1][2] && board[1][2] == board[2][2]) {
-			if (board[0][2] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking diagnols
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][1] && board[1][1] == board[2][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		if (board[2][0] != ' ' && board[2][0] == board[1][1] && board[1][1] == board[0][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
+		this.state = evaluate(xBits, oBits);
+		return this.state;
 
-			return this.state;
+	}
 
+	/**
+	 * Evaluates a board given as X and O bitboards.
+	 * 
+	 * @return one of DRAW, ONGOING, X_WON or O_WON
+	 */
+	static int evaluate(int xBits, int oBits) {
+		// rows, then columns, then diagonals
+		for (int line : LINES) {
+			if ((xBits & line) == line)
+				return X_WON;
+			if ((oBits & line) == line)
+				return O_WON;
 		}
 
-		boolean spacesLeft = false;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					spacesLeft = true;
-					break;
-
-				}
-			}
-
-		if (spacesLeft)
-			this.state = ONGOING;
-		else
-			this.state = DRAW;
-
-		return this.state;
+		if ((xBits | oBits) != FULL_BOARD)
+			return ONGOING;
 
+		return DRAW;
 	}
 
 	private int count(char xo) {
-		int count = 0;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				if (board[i][j] == xo)
-					count++;
-		return count;
+		return Integer.bitCount(xo == 'X' ? xBits : oBits);
 	}
 
 	/**
@@ -432,22 +474,49 @@ public class Game {
 		if (whoseTurn == o && m.who.getName() != 'O')
 			throw new IllegalMoveException("it is not o's turn");
 
-		if (board[m.x][m.y] != ' ')
+		int b = bit(m.x, m.y);
+		if (((xBits | oBits) & b) != 0)
 			throw new IllegalMoveException("Invalid move. The square is " + m);
 
+		Game next = place(3 * m.x + m.y);
+		next.evaluateGameState();
+		return next;
+
+	}
+
+	/**
+	 * The game reached when the agent whose turn it is plays {@code cell}
+	 * (3*x+y), for callers that already have its index in the
+	 * {@link StateIndex}: the new game state is read from the index instead of
+	 * being evaluated, and no index lookup is done.
+	 * 
+	 * @param cell an empty cell
+	 * @param to   {@code index.successor(s, cell)}, s being the index of this
+	 *             game
+	 */
+	Game successor(int cell, int to) {
+		Game next = place(cell);
+		next.state = StateIndex.get().status(to);
+		return next;
+	}
+
+	/**
+	 * @return a copy of this game with the agent whose turn it is playing
+	 *         {@code cell}, which must be empty. The game state of the copy is
+	 *         left for the caller to set.
+	 */
+	private Game place(int cell) {
 		Game copy = clone();
-		copy.board[m.x][m.y] = m.who.getName();
-		if (m.who.getName() == 'X')
+		if (whoseTurn == x) {
+			copy.xBits |= 1 << cell;
+			copy.boardHash += CELL_WEIGHT[cell];
 			copy.whoseTurn = copy.o;
-		else if (m.who.getName() == 'O')
+		} else {
+			copy.oBits |= 1 << cell;
+			copy.boardHash += 2 * CELL_WEIGHT[cell];
 			copy.whoseTurn = copy.x;
-		else
-			throw new IllegalArgumentException();
-
-		copy.evaluateGameState();
-
+		}
 		return copy;
-
 	}
 
 	/**
@@ -462,10 +531,17 @@ public class Game {
 		if (whoseTurn == o && m.who.getName() != 'O')
 			throw new IllegalMoveException("it is not X's turn");
 
-		if (board[m.x][m.y] != ' ')
+		int b = bit(m.x, m.y);
+		if (((xBits | oBits) & b) != 0)
 			throw new IllegalMoveException("Invalid move. The location (" + m.x + "," + m.y + ") is not empty");
 
-		board[m.x][m.y] = m.who.getName();
+		if (m.who.getName() == 'X') {
+			xBits |= b;
+			boardHash += CELL_WEIGHT[3 * m.x + m.y];
+		} else {
+			oBits |= b;
+			boardHash += 2 * CELL_WEIGHT[3 * m.x + m.y];
+		}
 		if (whoseTurn.getName() == 'X')
 			whoseTurn = o;
 		else if (m.who.getName() == 'O')
@@ -537,6 +613,140 @@ public class Game {
 		return new Game(this);
 	}
 
+	/**
+	 * The 8 symmetries of the board: SYMMETRIES[t][c] is the cell that cell c is
+	 * mapped to by transform t. Transform 0 is the identity, 1-3 rotate the board
+	 * clockwise by 90, 180 and 270 degrees, 4 and 5 mirror it left-right and
+	 * top-bottom, and 6 and 7 reflect it in the main and the anti diagonal.
+	 */
+	static final int[][] SYMMETRIES = new int[8][9];
+
+	/**
+	 * INVERSE[t] undoes transform t
+	 */
+	static final int[] INVERSE = { 0, 3, 2, 1, 4, 5, 6, 7 };
+
+	/**
+	 * TRANSFORMED_MASK[t][mask] is the cell mask {@code mask} under transform t
+	 */
+	private static final short[][] TRANSFORMED_MASK = new short[8][FULL_BOARD + 1];
+
+	/**
+	 * HASH_OF_MASK[mask] is the sum of CELL_WEIGHT over the cells in mask, so the
+	 * board hash of a position is HASH_OF_MASK[xBits] + 2 * HASH_OF_MASK[oBits].
+	 */
+	private static final int[] HASH_OF_MASK = new int[FULL_BOARD + 1];
+
+	static {
+		for (int r = 0; r < 3; r++)
+			for (int c = 0; c < 3; c++) {
+				int cell = 3 * r + c;
+				SYMMETRIES[0][cell] = 3 * r + c;
+				SYMMETRIES[1][cell] = 3 * c + (2 - r);
+				SYMMETRIES[2][cell] = 3 * (2 - r) + (2 - c);
+				SYMMETRIES[3][cell] = 3 * (2 - c) + r;
+				SYMMETRIES[4][cell] = 3 * r + (2 - c);
+				SYMMETRIES[5][cell] = 3 * (2 - r) + c;
+				SYMMETRIES[6][cell] = 3 * c + r;
+				SYMMETRIES[7][cell] = 3 * (2 - c) + (2 - r);
+			}
+
+		for (int mask = 0; mask <= FULL_BOARD; mask++) {
+			for (int cell = 0; cell < 9; cell++)
+				if ((mask & (1 << cell)) != 0)
+					HASH_OF_MASK[mask] += CELL_WEIGHT[cell];
+
+			for (int t = 0; t < 8; t++) {
+				int image = 0;
+				for (int cell = 0; cell < 9; cell++)
+					if ((mask & (1 << cell)) != 0)
+						image |= 1 << SYMMETRIES[t][cell];
+				TRANSFORMED_MASK[t][mask] = (short) image;
+			}
+		}
+	}
+
+	/**
+	 * @return cell mask {@code mask} under symmetry {@code t}, see
+	 *         {@link #SYMMETRIES}
+	 */
+	static int transformBits(int mask, int t) {
+		return TRANSFORMED_MASK[t][mask];
+	}
+
+	/**
+	 * @return the board part of {@link #hashCode()} for the given bitboards
+	 */
+	static int boardHash(int xBits, int oBits) {
+		return HASH_OF_MASK[xBits] + 2 * HASH_OF_MASK[oBits];
+	}
+
+	/**
+	 * @return the symmetry under which this game's board has the smallest hash.
+	 *         Ties go to the lowest transform, so a game that is already
+	 *         canonical returns 0.
+	 */
+	public int canonicalTransform() {
+		return canonicalTransform(xBits, oBits);
+	}
+
+	/**
+	 * @see #canonicalTransform()
+	 */
+	static int canonicalTransform(int xBits, int oBits) {
+		int best = 0;
+		int bestHash = boardHash(xBits, oBits);
+		for (int t = 1; t < 8; t++) {
+			int h = boardHash(transformBits(xBits, t), transformBits(oBits, t));
+			if (h < bestHash) {
+				bestHash = h;
+				best = t;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return a copy of this game with the board transformed by symmetry
+	 *         {@code t}. The agents, whose turn it is and the game state are kept.
+	 */
+	public Game transform(int t) {
+		Game g = new Game(this);
+		g.xBits = transformBits(xBits, t);
+		g.oBits = transformBits(oBits, t);
+		g.boardHash = boardHash(g.xBits, g.oBits);
+		return g;
+	}
+
+	/**
+	 * The canonical form of this game: the member of its class of
+	 * rotations/reflections with the smallest hash. All 8 orientations of a
+	 * position share the same canonical form.
+	 * 
+	 * @return the canonical form, this game itself if it is already canonical.
+	 */
+	public Game canonical() {
+		int t = canonicalTransform();
+		return t == 0 ? this : transform(t);
+	}
+
+	/**
+	 * @return move {@code m} mapped by symmetry {@code t}. To map a move chosen in
+	 *         the canonical form of game g back to g, use
+	 *         {@code transform(m, inverseTransform(g.canonicalTransform()))}.
+	 */
+	public static Move transform(Move m, int t) {
+		int cell = SYMMETRIES[t][3 * m.x + m.y];
+		return new Move(m.who, cell / 3, cell % 3);
+	}
+
+	/**
+	 * @return the symmetry that undoes symmetry {@code t}
+	 */
+	public static int inverseTransform(int t) {
+		return INVERSE[t];
+	}
+
 	/**
 	 * A hashCode function implemented assuming the game board is a 10 digit number
 	 * in base three, where: ' ' maps to 0 'X' maps to 1 'O' maps to 2
@@ -555,27 +765,9 @@ public class Game {
 		// ' ' ->0
 		// 'X' ->1
 		// 'O' ->2
-		String s = "";
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				switch (board[i][j]) {
-				case 'X':
-					s += "1";
-					break;
-				case 'O':
-					s += "2";
-					break;
-				case ' ':
-					s += "0";
-					break;
-				}
-
-			}
-		// also encode whose turn it is. Either 1 or 2 (x or o)
-
-		s += (whoseTurn == x) ? "1" : "2";
-
-		return Integer.parseInt(s, 3);
+		// the board digits are maintained incrementally in boardHash, so we only
+		// need to add whose turn it is. Either 1 or 2 (x or o)
+		return boardHash + ((whoseTurn == x) ? 1 : 2);
 
 	}
 
@@ -587,48 +779,44 @@ public class Game {
 	 * You can use this method to read your policy or value functions from file.
 	 * 
 	 * @param hash
-	 * @return the Game corresponding to the hash
+	 * @return the Game corresponding to the hash, or null if the hash doesn't
+	 *         encode whose turn it is.
 	 */
 	public static Game inverseHash(int hash) {
 
-		Game g = new Game();
-
-		String s1 = Integer.toString(hash, 3);
+		if (hash < 0)
+			throw new IllegalArgumentException("Not a game hash: " + hash);
 
-		if (s1.charAt(s1.length() - 1) == '0')
+		int turn = hash % 3;
+		if (turn == 0)
 			return null;
 
-		// add leading 0's
-		String s = new String(s1);
-
-		for (int i = 0; i < 10 - s1.length(); i++) {
-			s = "0" + s;
-		}
-		// System.out.println("Intermediate string:"+s);
+		Game g = new Game();
 		// set whose turn
-		if (s.charAt(s.length() - 1) == '1')
+		if (turn == 1)
 			g.whoseTurn = g.x;
-		else if (s.charAt(s.length() - 1) == '2')
+		else
 			g.whoseTurn = g.o;
 
-		for (int l = s.length() - 2; l >= 0; l--) {
-			int i = (int) l / 3;
-			int j = (int) l % 3;
-			switch (s.charAt(l)) {
-			case '0':
-				g.board[i][j] = ' ';
+		// peel off the board digits, least significant (cell 8) first
+		int rest = hash / 3;
+		for (int cell = 8; cell >= 0; cell--) {
+			switch (rest % 3) {
+			case 1:
+				g.xBits |= 1 << cell;
 				break;
-			case '1':
-				g.board[i][j] = 'X';
-				break;
-			case '2':
-				g.board[i][j] = 'O';
+			case 2:
+				g.oBits |= 1 << cell;
 				break;
 			default:
-				throw new IllegalStateException("this shouldn't happen!");
-
+				break;
 			}
+			rest /= 3;
 		}
+		if (rest != 0)
+			throw new IllegalArgumentException("Not a game hash: " + hash);
+
+		g.boardHash = hash - turn;
 
 		return g;
 	}
@@ -639,7 +827,8 @@ public class Game {
 		else if (!(other instanceof Game))
 			return false;
 
-		return this.hashCode() == other.hashCode();
+		Game g = (Game) other;
+		return this.boardHash == g.boardHash && (this.whoseTurn == this.x) == (g.whoseTurn == g.x);
 	}
 
 	public int getState() {
@@ -651,8 +840,8 @@ public class Game {
 		return this.state != ONGOING;
 	}
 
-	public static final String help = " -h this menu" + "\n -x the X agent: -x <pi, vi, random, agg, def, human>"
-			+ "\n -o the O agent: -o <random, agg, def, human>"
+	public static final String help = " -h this menu" + "\n -x the X agent: -x <pi, vi, nm, mcts, random, agg, def, human>"
+			+ "\n -o the O agent: -o <pi, vi, nm, mcts, random, agg, def, human>"
 			+ "\n -s the agent that starts the game (x or o): -s <x or o>";
 
 	// public static void main(String args[]) throws IllegalMoveException
@@ -684,6 +873,15 @@ public class Game {
 	// System.out.println("there were:"+games.size());
 	// }
 
+	/**
+	 * @return the default {@link TTTMDP}, planning for {@code side}
+	 */
+	private static TTTMDP mdpPlanningFor(char side) {
+		TTTMDP mdp = new TTTMDP();
+		mdp.setPlanner(side);
+		return mdp;
+	}
+
 	/**
 	 * 
 	 * @param a
@@ -709,7 +907,7 @@ public class Game {
 			case "-x":
 				next = iter.next();
 				if (next == null || next.startsWith("-")) {
-					System.out.println("-x should be followed by the agent name, vi, pi, random, agg, def, or human");
+					System.out.println("-x should be followed by the agent name, vi, pi, nm, mcts, random, agg, def, or human");
 					return;
 				}
 				if (next.equals("vi")) {
@@ -718,6 +916,12 @@ public class Game {
 				} else if (next.equals("pi")) {
 					System.out.println("X is pi agent.");
 					x = new PolicyIterationAgent();
+				} else if (next.equals("nm")) {
+					System.out.println("X is negamax agent.");
+					x = new NegamaxAgent();
+				} else if (next.equals("mcts")) {
+					System.out.println("X is mcts agent.");
+					x = new MCTSAgent();
 				} else if (next.equals("random")) {
 					System.out.println("X is random agent.");
 					x = new RandomAgent();
@@ -748,13 +952,17 @@ public class Game {
 					return;
 				}
 				if (next.equals("vi")) {
-					System.out.println("Error: the value iteration agent should be the X agent");
-					return;
-				}
-
-				else if (next.equals("pi")) {
-					System.out.println("Error: the policy iteration agent should be the X agent");
-					return;
+					System.out.println("O is vi agent.");
+					o = new ValueIterationAgent(0.9, mdpPlanningFor('O'));
+				} else if (next.equals("pi")) {
+					System.out.println("O is pi agent.");
+					o = new PolicyIterationAgent(0.9, mdpPlanningFor('O'));
+				} else if (next.equals("nm")) {
+					System.out.println("O is negamax agent.");
+					o = new NegamaxAgent();
+				} else if (next.equals("mcts")) {
+					System.out.println("O is mcts agent.");
+					o = new MCTSAgent();
 				} else if (next.equals("random"))
 					o = new RandomAgent();
 				else if (next.equals("human")) {
@@ -0,0 +1,396 @@
+package ticTacToe;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A Monte Carlo Tree Search agent (UCT): like {@link NegamaxAgent} it needs no training, and instead runs a budget of
+ * random playouts from the current position every move, growing a search tree that steers the playouts towards the
+ * moves that look best so far. The move played is the most visited one.
+ *
+ * The tree is kept between moves: on the next move the agent looks for the new position among the grandchildren of
+ * the last root (its own move, then the opponent's), and carries on with that subtree and all its statistics.
+ *
+ * Playouts run on a pair of X/O bitboards, so they don't allocate anything. With more than one thread the search is
+ * root-parallel: each thread grows its own tree over its share of the budget, and the root visit counts of all the trees
+ * are added up to choose the move.
+ *
+ * The parallel search keeps its threads between moves; {@link #close()} shuts them down.
+ *
+ * The budget is a number of playouts, and optionally a time limit (see {@link #setTimeLimit(long)}); the search stops at
+ * whichever runs out first.
+ *
+ */
+public class MCTSAgent extends Agent implements AutoCloseable {
+
+	/**
+	 * The UCT exploration constant
+	 */
+	double exploration=Math.sqrt(2);
+
+	/**
+	 * Playouts per move, over all threads
+	 */
+	int playouts=10000;
+
+	/**
+	 * Time limit per move in milliseconds, 0 for none
+	 */
+	long timeLimit=0;
+
+	/**
+	 * One search tree per thread
+	 */
+	final Worker[] workers;
+
+	/**
+	 * Runs the workers when there is more than one. Created on first use and kept for all later moves, so that thread
+	 * start-up isn't part of every move's search time; released by {@link #close()}.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Statistics of the last move: playouts run, playouts carried over in the reused trees, and the time taken in
+	 * milliseconds
+	 */
+	long lastPlayouts;
+	long reusedPlayouts;
+	double lastTime;
+
+	public MCTSAgent()
+	{
+		this(10000, 1);
+	}
+
+	public MCTSAgent(int playouts)
+	{
+		this(playouts, 1);
+	}
+
+	/**
+	 * @param playouts the number of playouts per move, over all threads
+	 * @param threads the number of threads searching in parallel, each with its own tree
+	 */
+	public MCTSAgent(int playouts, int threads)
+	{
+		super(null);
+		if (playouts<1)
+			throw new IllegalArgumentException("Playouts should be at least 1");
+		if (threads<1)
+			throw new IllegalArgumentException("Threads should be at least 1");
+
+		this.playouts=playouts;
+		this.workers=new Worker[threads];
+		for (int i=0; i<threads; i++)
+			workers[i]=new Worker();
+	}
+
+	/**
+	 * Also stops the search for a move after {@code millis} milliseconds, even if the playout budget isn't used up. 0
+	 * turns this off.
+	 * @param millis
+	 */
+	public void setTimeLimit(long millis)
+	{
+		if (millis<0)
+			throw new IllegalArgumentException("Time limit should not be negative");
+
+		this.timeLimit=millis;
+	}
+
+	public void setExploration(double c)
+	{
+		this.exploration=c;
+	}
+
+	@Override
+	public Move getMove(Game g)
+	{
+		long start=System.nanoTime();
+		final long deadline=timeLimit==0 ? 0 : start+timeLimit*1000000;
+		final int xBits=g.getXBits();
+		final int oBits=g.getOBits();
+		final boolean xToMove=g.whoseTurn.getName()=='X';
+
+		reusedPlayouts=0;
+		for (Worker w : workers)
+			reusedPlayouts+=w.moveTo(xBits, oBits, xToMove);
+
+		final int share=(playouts+workers.length-1)/workers.length;
+		if (workers.length==1)
+			workers[0].search(share, deadline);
+		else {
+			List<Callable<Void>> tasks=new ArrayList<Callable<Void>>();
+			for (final Worker w : workers)
+				tasks.add(new Callable<Void>() {
+					public Void call()
+					{
+						w.search(share, deadline);
+						return null;
+					}
+				});
+			if (pool==null)
+				pool=new ForkJoinPool(workers.length);
+
+			try {
+				for (Future<Void> f : pool.invokeAll(tasks))
+					f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while searching", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+
+		// the most visited move over all trees
+		long[] visits=new long[9];
+		lastPlayouts=0;
+		for (Worker w : workers) {
+			lastPlayouts+=w.playouts;
+			for (int cell=0; cell<9; cell++)
+				if (w.root.children[cell]!=null)
+					visits[cell]+=w.root.children[cell].visits;
+		}
+		int best=-1;
+		for (int cell=0; cell<9; cell++)
+			if ((g.getEmptyBits()&(1<<cell))!=0 && (best<0 || visits[cell]>visits[best]))
+				best=cell;
+
+		lastTime=(System.nanoTime()-start)/1e6;
+		return new Move(g.whoseTurn, best/3, best%3);
+	}
+
+	/**
+	 * Shuts down the threads of the parallel search. The agent can still be used: the next move starts new ones. Its
+	 * threads are daemon threads, which also end on their own once idle for a while, so an agent that is never closed
+	 * doesn't keep the JVM running.
+	 */
+	@Override
+	public void close()
+	{
+		if (pool!=null) {
+			pool.shutdown();
+			pool=null;
+		}
+	}
+
+	/**
+	 * @return the number of playouts run for the last move, over all threads
+	 */
+	public long getPlayouts()
+	{
+		return lastPlayouts;
+	}
+
+	/**
+	 * @return the number of playouts already in the reused trees when the search for the last move started
+	 */
+	public long getReusedPlayouts()
+	{
+		return reusedPlayouts;
+	}
+
+	/**
+	 * @return how long the last move took, in milliseconds
+	 */
+	public double getTime()
+	{
+		return lastTime;
+	}
+
+	public double getPlayoutsPerSecond()
+	{
+		return lastTime==0 ? 0.0 : lastPlayouts/lastTime*1000;
+	}
+
+	/**
+	 * A search tree node
+	 */
+	static final class Node
+	{
+		final int xBits;
+		final int oBits;
+		final boolean xToMove;
+		final int status;
+
+		/**
+		 * empty cells without a child yet
+		 */
+		int untried;
+		final Node[] children=new Node[9];
+
+		/**
+		 * the number of playouts through this node, and their total score for the player who moved into it (1 for a win,
+		 * 0.5 for a draw)
+		 */
+		int visits;
+		double score;
+
+		Node(int xBits, int oBits, boolean xToMove)
+		{
+			this.xBits=xBits;
+			this.oBits=oBits;
+			this.xToMove=xToMove;
+			this.status=Game.evaluate(xBits, oBits);
+			this.untried=status==Game.ONGOING ? ~(xBits|oBits)&Game.FULL_BOARD : 0;
+		}
+	}
+
+	/**
+	 * One search tree and the random number generator for its playouts. Only used by one thread at a time.
+	 */
+	final class Worker
+	{
+		Node root;
+		final SplittableRandom random=new SplittableRandom();
+		final Node[] path=new Node[10];
+
+		/**
+		 * playouts run by the last call to {@link #search(int, long)}
+		 */
+		long playouts;
+
+		/**
+		 * Moves the root to the given position, keeping the subtree if the position is the root or one of its children
+		 * or grandchildren.
+		 * @return the number of playouts already through the new root
+		 */
+		long moveTo(int xBits, int oBits, boolean xToMove)
+		{
+			Node found=find(root, xBits, oBits, xToMove, 2);
+			root=found!=null ? found : new Node(xBits, oBits, xToMove);
+			return root.visits;
+		}
+
+		private Node find(Node node, int xBits, int oBits, boolean xToMove, int depth)
+		{
+			if (node==null)
+				return null;
+			if (node.xBits==xBits && node.oBits==oBits && node.xToMove==xToMove)
+				return node;
+			if (depth==0)
+				return null;
+
+			for (Node child : node.children) {
+				Node found=find(child, xBits, oBits, xToMove, depth-1);
+				if (found!=null)
+					return found;
+			}
+			return null;
+		}
+
+		void search(int budget, long deadline)
+		{
+			playouts=0;
+			while (playouts<budget && (deadline==0 || System.nanoTime()<deadline)) {
+				iterate();
+				playouts++;
+			}
+		}
+
+		/**
+		 * One round of selection, expansion, playout and backpropagation
+		 */
+		private void iterate()
+		{
+			Node node=root;
+			int depth=0;
+			path[depth++]=node;
+
+			// selection
+			while (node.status==Game.ONGOING && node.untried==0) {
+				node=select(node);
+				path[depth++]=node;
+			}
+
+			// expansion
+			if (node.status==Game.ONGOING) {
+				int cell=randomCell(node.untried);
+				node.untried&=~(1<<cell);
+				Node child=node.xToMove ? new Node(node.xBits|(1<<cell), node.oBits, false)
+						: new Node(node.xBits, node.oBits|(1<<cell), true);
+				node.children[cell]=child;
+				node=child;
+				path[depth++]=node;
+			}
+
+			int status=node.status==Game.ONGOING ? playout(node.xBits, node.oBits, node.xToMove) : node.status;
+
+			for (int i=0; i<depth; i++) {
+				Node n=path[i];
+				n.visits++;
+				// score for the player who moved into n, i.e. the one not to move in n
+				if (status==Game.DRAW)
+					n.score+=0.5;
+				else if ((status==Game.X_WON)!=n.xToMove)
+					n.score+=1.0;
+			}
+		}
+
+		/**
+		 * @return the child of a fully expanded node with the highest UCT value
+		 */
+		private Node select(Node node)
+		{
+			double logVisits=Math.log(node.visits);
+			Node best=null;
+			double bestValue=Double.NEGATIVE_INFINITY;
+			for (Node child : node.children) {
+				if (child==null)
+					continue;
+				double value=child.score/child.visits+exploration*Math.sqrt(logVisits/child.visits);
+				if (value>bestValue) {
+					bestValue=value;
+					best=child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Plays random moves to the end of the game
+		 * @return the final game state, one of {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+		 */
+		private int playout(int xBits, int oBits, boolean xToMove)
+		{
+			int status=Game.ONGOING;
+			while (status==Game.ONGOING) {
+				int cell=randomCell(~(xBits|oBits)&Game.FULL_BOARD);
+				if (xToMove)
+					xBits|=1<<cell;
+				else
+					oBits|=1<<cell;
+				xToMove=!xToMove;
+				status=Game.evaluate(xBits, oBits);
+			}
+			return status;
+		}
+
+		/**
+		 * @return one of the set bits of {@code cells}, uniformly at random
+		 */
+		private int randomCell(int cells)
+		{
+			for (int skip=random.nextInt(Integer.bitCount(cells)); skip>0; skip--)
+				cells&=cells-1;
+			return Integer.numberOfTrailingZeros(cells);
+		}
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		//play the agent against a human agent.
+		MCTSAgent mcts=new MCTSAgent(20000, Runtime.getRuntime().availableProcessors());
+		HumanAgent d=new HumanAgent();
+		Game g=new Game(mcts, d, d);
+		g.playOut();
+	}
+
+}
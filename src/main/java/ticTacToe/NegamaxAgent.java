@@ -0,0 +1,322 @@
+package ticTacToe;
+
+
+import java.util.Arrays;
+
+/**
+ * An online search agent: instead of training up front, it finds each move by a full negamax search with alpha-beta
+ * pruning from the current position.
+ *
+ * Scores are from the point of view of the player to move: a win scores 1 plus the number of cells still empty after
+ * the winning move (so quicker wins score higher), a draw 0 and a loss minus the winner's score. As a score only depends
+ * on the position, not on how it was reached, search results are kept in a transposition table for the lifetime of the
+ * agent, across moves and games. The table is indexed by the hash of the position (see {@link Game#hashCode()}), which
+ * is below 3^10, so it is a set of flat arrays rather than a map.
+ *
+ * Moves are tried best first: the move stored in the transposition table, if any, then the centre, the corners and the
+ * edges.
+ *
+ * With a time limit (see {@link #setTimeLimit(long)}) the search is iterative deepening instead: depth-limited searches
+ * of depth 1, 2, ... (positions at the depth limit score 0, as for a draw), each ordered by the best moves stored by the
+ * previous one, until the game tree is searched to the end or the deadline passes. The search that is cut off by the
+ * deadline is thrown away, and the best move of the last completed depth is played. Table entries record the depth they
+ * were searched to, so depth-limited scores are never used where a deeper search is needed. A node limit (see
+ * {@link #setNodeLimit(long)}) cuts the search off in the same way, but always after the same amount of work.
+ *
+ * The depth reached, the number of nodes searched, the transposition table hit rate and the time taken by the last move
+ * can be read with {@link #getDepth()}, {@link #getNodes()}, {@link #getHitRate()} and {@link #getTime()}.
+ *
+ */
+public class NegamaxAgent extends Agent {
+
+	/**
+	 * Transposition table entry types: no entry, exact score, lower bound (the search failed high), upper bound (the
+	 * search failed low)
+	 */
+	static final byte NONE=0;
+	static final byte EXACT=1;
+	static final byte LOWER=2;
+	static final byte UPPER=3;
+
+	static final int TABLE_SIZE=59049;
+
+	/**
+	 * Cells in the order they are tried: centre, corners, edges
+	 */
+	static final int[] MOVE_ORDER= { 4, 0, 2, 6, 8, 1, 3, 5, 7 };
+
+	/**
+	 * Larger than any score
+	 */
+	static final int INFINITY=100;
+
+	/**
+	 * The deadline is checked once per this many nodes
+	 */
+	static final int CLOCK_CHECK_INTERVAL=256;
+
+	/**
+	 * The transposition table, indexed by position hash: the type of entry, the score or bound, the depth it was searched
+	 * to, and the best cell found
+	 */
+	final byte[] flag=new byte[TABLE_SIZE];
+	final byte[] score=new byte[TABLE_SIZE];
+	final byte[] draft=new byte[TABLE_SIZE];
+	final byte[] bestCell=new byte[TABLE_SIZE];
+
+	/**
+	 * Time limit per move in milliseconds, 0 for a full search
+	 */
+	long timeLimit=0;
+
+	/**
+	 * Node limit per move, 0 for none
+	 */
+	long nodeLimit=0;
+
+	/**
+	 * The deadline of the current search as a {@link System#nanoTime()}, 0 for none, and whether it, or the node limit,
+	 * has passed
+	 */
+	private long deadline;
+	private boolean outOfTime;
+
+	/**
+	 * Statistics of the last move: depth of the last completed search, nodes visited, transposition table lookups and
+	 * lookups that found an entry, and the time taken in milliseconds
+	 */
+	int depthReached;
+	long nodes;
+	long probes;
+	long hits;
+	double time;
+
+	public NegamaxAgent()
+	{
+		super(null);
+	}
+
+	/**
+	 * @param timeLimit the time limit per move in milliseconds, see {@link #setTimeLimit(long)}
+	 */
+	public NegamaxAgent(long timeLimit)
+	{
+		this();
+		setTimeLimit(timeLimit);
+	}
+
+	/**
+	 * Makes every move an iterative deepening search that returns within {@code millis} milliseconds (give or take
+	 * the time to search {@link #CLOCK_CHECK_INTERVAL} nodes). 0 goes back to full searches.
+	 * @param millis
+	 */
+	public void setTimeLimit(long millis)
+	{
+		if (millis<0)
+			throw new IllegalArgumentException("Time limit should not be negative");
+
+		this.timeLimit=millis;
+	}
+
+	/**
+	 * Also makes every move an iterative deepening search, which stops after searching {@code nodes} nodes. Unlike the
+	 * time limit, this gives the same move for the same position every time, whatever the machine's speed. 0 turns this
+	 * off.
+	 * @param nodes
+	 */
+	public void setNodeLimit(long nodes)
+	{
+		if (nodes<0)
+			throw new IllegalArgumentException("Node limit should not be negative");
+
+		this.nodeLimit=nodes;
+	}
+
+	@Override
+	public Move getMove(Game g)
+	{
+		long start=System.nanoTime();
+		nodes=0;
+		probes=0;
+		hits=0;
+		outOfTime=false;
+		deadline=timeLimit==0 ? 0 : start+timeLimit*1000000;
+
+		boolean xToMove=g.whoseTurn.getName()=='X';
+		int own=xToMove ? g.getXBits() : g.getOBits();
+		int opp=xToMove ? g.getOBits() : g.getXBits();
+		int hash=Game.boardHash(g.getXBits(), g.getOBits());
+		int key=key(hash, xToMove);
+		int empties=Integer.bitCount(g.getEmptyBits());
+
+		// if even depth 1 doesn't complete, play the first legal move in the usual order
+		int cell=-1;
+		for (int i=0; cell<0; i++)
+			if ((g.getEmptyBits()&(1<<MOVE_ORDER[i]))!=0)
+				cell=MOVE_ORDER[i];
+
+		depthReached=0;
+		for (int depth=timeLimit==0 && nodeLimit==0 ? empties : 1; depth<=empties; depth++) {
+			search(own, opp, xToMove, hash, depth, -INFINITY, INFINITY);
+			if (outOfTime)
+				break;
+
+			depthReached=depth;
+			cell=bestCell[key];
+			// the table may already hold a search to the end of the game
+			if (flag[key]==EXACT && draft[key]>=empties) {
+				depthReached=empties;
+				break;
+			}
+		}
+
+		time=(System.nanoTime()-start)/1e6;
+		return new Move(g.whoseTurn, cell/3, cell%3);
+	}
+
+	/**
+	 * Depth-limited negamax search with alpha-beta pruning (fail-soft). Sets {@link #outOfTime} and returns a meaningless
+	 * score, storing nothing, if the deadline or the node limit passes.
+	 *
+	 * @param own the stones of the player to move
+	 * @param opp the stones of the other player
+	 * @param xToMove whether the player to move is X
+	 * @param hash {@link Game#boardHash(int, int)} of the position
+	 * @param depth the number of moves to search ahead, at least the number of empty cells to search to the end
+	 * @return the score of the position for the player to move, exact if it's strictly between alpha and beta, otherwise
+	 *         a bound on the far side of the window
+	 */
+	int search(int own, int opp, boolean xToMove, int hash, int depth, int alpha, int beta)
+	{
+		nodes++;
+		if ((nodeLimit!=0 && nodes>nodeLimit)
+				|| (deadline!=0 && nodes%CLOCK_CHECK_INTERVAL==0 && System.nanoTime()>deadline)) {
+			outOfTime=true;
+			return 0;
+		}
+
+		int empty=~(own|opp)&Game.FULL_BOARD;
+		if (empty==0 || depth==0)
+			return 0;
+
+		int key=key(hash, xToMove);
+		int tableMove=-1;
+		probes++;
+		if (flag[key]!=NONE) {
+			hits++;
+			tableMove=bestCell[key];
+			if (draft[key]>=depth) {
+				int stored=score[key];
+				if (flag[key]==EXACT)
+					return stored;
+				else if (flag[key]==LOWER)
+					alpha=Math.max(alpha, stored);
+				else
+					beta=Math.min(beta, stored);
+				if (alpha>=beta)
+					return stored;
+			}
+		}
+
+		int originalAlpha=alpha;
+		int best=-INFINITY;
+		int bestMove=-1;
+		int stoneWeight=xToMove ? 1 : 2;
+		for (int i=-1; i<9; i++) {
+			int cell=i<0 ? tableMove : MOVE_ORDER[i];
+			if (cell<0 || (empty&(1<<cell))==0 || (i>=0 && cell==tableMove))
+				continue;
+
+			int mine=own|(1<<cell);
+			int value;
+			if (hasLine(mine))
+				value=Integer.bitCount(empty);
+			else
+				value=-search(opp, mine, !xToMove, hash+stoneWeight*Game.CELL_WEIGHT[cell], depth-1, -beta, -alpha);
+			if (outOfTime)
+				return 0;
+
+			if (value>best) {
+				best=value;
+				bestMove=cell;
+			}
+			if (best>alpha)
+				alpha=best;
+			if (alpha>=beta)
+				break;
+		}
+
+		flag[key]=best<=originalAlpha ? UPPER : best>=beta ? LOWER : EXACT;
+		score[key]=(byte) best;
+		draft[key]=(byte) depth;
+		bestCell[key]=(byte) bestMove;
+		return best;
+	}
+
+	/**
+	 * @return the transposition table index of a position, the same as its {@link Game#hashCode()}
+	 */
+	static int key(int hash, boolean xToMove)
+	{
+		return hash+(xToMove ? 1 : 2);
+	}
+
+	static boolean hasLine(int bits)
+	{
+		for (int line : Game.LINES)
+			if ((bits&line)==line)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the depth of the last completed search for the last move; the number of empty cells if it was searched to
+	 *         the end of the game
+	 */
+	public int getDepth()
+	{
+		return depthReached;
+	}
+
+	/**
+	 * @return how long the last move took, in milliseconds
+	 */
+	public double getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * @return the number of positions visited by the search for the last move
+	 */
+	public long getNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * @return the fraction of transposition table lookups that found an entry in the search for the last move
+	 */
+	public double getHitRate()
+	{
+		return probes==0 ? 0.0 : (double) hits/probes;
+	}
+
+	/**
+	 * Forgets all stored search results
+	 */
+	public void clearTable()
+	{
+		Arrays.fill(flag, NONE);
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		//play the agent against a human agent.
+		NegamaxAgent nm=new NegamaxAgent();
+		HumanAgent d=new HumanAgent();
+		Game g=new Game(nm, d, d);
+		g.playOut();
+	}
+
+}
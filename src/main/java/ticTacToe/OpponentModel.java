@@ -0,0 +1,170 @@
+package ticTacToe;
+
+
+/**
+ * A model of how the opponent plays: a probability distribution over its moves in every state. {@link TTTMDP} uses one
+ * to generate the opponent's replies, so planning agents (e.g. {@link ValueIterationAgent}, {@link RetrogradeAgent})
+ * compute the best response to that opponent. The model is only queried when the MDP is compiled or its transitions
+ * generated, so it costs nothing at solving time.
+ *
+ * Use the static methods to get the models for the opponents in this package, or to mix models.
+ *
+ */
+public interface OpponentModel {
+
+	/**
+	 * Fills {@code probs[cell]} (cell = 3*x+y) with the probability that the opponent, playing as {@code mover} on the
+	 * board given by the X and O bitboards, plays in {@code cell}. Only empty cells may get a non-zero probability, and
+	 * the probabilities must sum to 1. Only called for non-terminal boards.
+	 *
+	 * @param xBits cells taken by X, see {@link Game#getXBits()}
+	 * @param oBits cells taken by O
+	 * @param mover 'X' or 'O'
+	 * @param probs array of length 9 to fill in
+	 */
+	void moveDistribution(int xBits, int oBits, char mover, double[] probs);
+
+	/**
+	 * @return a model of {@link RandomAgent}: every empty cell is equally likely
+	 */
+	static OpponentModel uniform()
+	{
+		return new OpponentModel() {
+			public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+			{
+				int empty=~(xBits|oBits)&Game.FULL_BOARD;
+				double p=(double) 1/Integer.bitCount(empty);
+				for (int cell=0; cell<9; cell++)
+					probs[cell]=(empty&(1<<cell))!=0 ? p : 0.0;
+			}
+		};
+	}
+
+	/**
+	 * @return a model of {@link AggressiveAgent}: it plays the first winning move there is (in row-major order, as
+	 *         {@link AggressivePolicy} does), and otherwise a random one.
+	 */
+	static OpponentModel aggressive()
+	{
+		return new OpponentModel() {
+			public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+			{
+				int own=mover=='X' ? xBits : oBits;
+				playFirstCompletingOrRandom(xBits, oBits, own, probs);
+			}
+		};
+	}
+
+	/**
+	 * @return a model of {@link DefensiveAgent}: it blocks the first cell (in row-major order, as {@link DefensivePolicy}
+	 *         does) where the other player would complete a line, and otherwise plays randomly.
+	 */
+	static OpponentModel defensive()
+	{
+		return new OpponentModel() {
+			public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+			{
+				int other=mover=='X' ? oBits : xBits;
+				playFirstCompletingOrRandom(xBits, oBits, other, probs);
+			}
+		};
+	}
+
+	/**
+	 * @return a model that, in every state, plays like {@code models[i]} with probability {@code weights[i]}. The weights
+	 *         are normalised.
+	 */
+	static OpponentModel mixture(final OpponentModel[] models, final double[] weights)
+	{
+		if (models.length!=weights.length || models.length==0)
+			throw new IllegalArgumentException("Need one weight per model, and at least one model");
+
+		double total=0;
+		for (double w : weights) {
+			if (w<0)
+				throw new IllegalArgumentException("Weights should not be negative");
+			total+=w;
+		}
+		final double sum=total;
+
+		return new OpponentModel() {
+			public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+			{
+				double[] part=new double[9];
+				for (int cell=0; cell<9; cell++)
+					probs[cell]=0.0;
+				for (int i=0; i<models.length; i++) {
+					models[i].moveDistribution(xBits, oBits, mover, part);
+					for (int cell=0; cell<9; cell++)
+						probs[cell]+=weights[i]/sum*part[cell];
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return a model of an opponent that follows {@code policy}. The policy is asked for its move once per state, so it
+	 *         is treated as deterministic. Where it returns no move the opponent is assumed to play randomly.
+	 */
+	static OpponentModel fromPolicy(final Policy policy)
+	{
+		return new OpponentModel() {
+			public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+			{
+				Game g=new Game(mover);
+				g.xBits=xBits;
+				g.oBits=oBits;
+				g.boardHash=Game.boardHash(xBits, oBits);
+				g.evaluateGameState();
+				Move m=policy.getMove(g);
+				if (m==null) {
+					uniform().moveDistribution(xBits, oBits, mover, probs);
+					return;
+				}
+				for (int cell=0; cell<9; cell++)
+					probs[cell]=0.0;
+				probs[3*m.x+m.y]=1.0;
+			}
+		};
+	}
+
+	/**
+	 * Puts all the probability on the first empty cell that would complete a line of {@code line} stones, or spreads it
+	 * evenly over the empty cells if there is none.
+	 */
+	static void playFirstCompletingOrRandom(int xBits, int oBits, int line, double[] probs)
+	{
+		int empty=~(xBits|oBits)&Game.FULL_BOARD;
+		for (int cell=0; cell<9; cell++) {
+			if ((empty&(1<<cell))==0)
+				continue;
+			if (Game.evaluate(line|(1<<cell), 0)==Game.X_WON) {
+				for (int c=0; c<9; c++)
+					probs[c]=c==cell ? 1.0 : 0.0;
+				return;
+			}
+		}
+		uniform().moveDistribution(xBits, oBits, 'X', probs);
+	}
+
+	/**
+	 * @param probs a distribution filled in by {@link #moveDistribution}
+	 * @param u uniform in [0, 1)
+	 * @return the cell drawn from {@code probs} by {@code u}
+	 */
+	static int sample(double[] probs, double u)
+	{
+		int last=-1;
+		for (int cell=0; cell<9; cell++) {
+			if (probs[cell]==0.0)
+				continue;
+			last=cell;
+			u-=probs[cell];
+			if (u<0)
+				return cell;
+		}
+		// rounding errors
+		return last;
+	}
+
+}
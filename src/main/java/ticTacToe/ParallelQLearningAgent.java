@@ -0,0 +1,184 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A {@link QLearningAgent} that trains with several threads at once, Hogwild style: each worker thread plays its share
+ * of the episodes in its own {@link TTTEnvironment}, against its own opponent, and all of them update one shared
+ * {@link ConcurrentQTable} without locks. Once they are all done the q-values are copied to {@link #qTable} and the
+ * policy is extracted as usual.
+ *
+ * Opponents are given as a {@link Supplier}, called once per worker, so that opponents that keep state (e.g. a
+ * {@link MCTSAgent}) are not shared between threads.
+ *
+ * The q-table is not symmetric (see {@link QLearningAgent#symmetric}).
+ *
+ */
+public class ParallelQLearningAgent extends QLearningAgent {
+
+	/**
+	 * The number of worker threads
+	 */
+	int threads=Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Makes an opponent for each worker
+	 */
+	final Supplier<? extends Agent> opponents;
+
+	/**
+	 * The table shared by the workers while training
+	 */
+	ConcurrentQTable shared;
+
+	/**
+	 * how long the last call to {@link #train()} took, in milliseconds
+	 */
+	double trainTime;
+
+	/**
+	 * Trains against random opponents with the default parameters of {@link QLearningAgent}, using all available
+	 * processors
+	 */
+	public ParallelQLearningAgent()
+	{
+		this(new Supplier<Agent>() {
+			public Agent get()
+			{
+				return new RandomAgent();
+			}
+		}, 0.1, 40000, 0.9, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param opponents called once per worker to make the opponent it trains against
+	 * @param learningRate
+	 * @param numEpisodes the number of episodes over all workers
+	 * @param discount
+	 * @param threads the number of worker threads
+	 */
+	public ParallelQLearningAgent(Supplier<? extends Agent> opponents, double learningRate, int numEpisodes, double discount, int threads)
+	{
+		super((Policy) null);
+		if (threads<1)
+			throw new IllegalArgumentException("Threads should be at least 1");
+
+		this.opponents=opponents;
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		this.threads=threads;
+		initQTable();
+		train();
+	}
+
+	/**
+	 * Plays {@link #numEpisodes} episodes split over {@link #threads} workers, then extracts the policy.
+	 */
+	@Override
+	public void train()
+	{
+		long start=System.nanoTime();
+		shared=new ConcurrentQTable(qTable);
+
+		List<Callable<Void>> tasks=new ArrayList<Callable<Void>>();
+		for (int w=0; w<threads; w++) {
+			// spread the remainder over the first workers
+			final int episodes=numEpisodes/threads+(w<numEpisodes%threads ? 1 : 0);
+			final TTTEnvironment environment=new TTTEnvironment(opponents.get());
+			tasks.add(new Callable<Void>() {
+				public Void call()
+				{
+					runEpisodes(environment, episodes);
+					return null;
+				}
+			});
+		}
+
+		ForkJoinPool pool=new ForkJoinPool(threads);
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Training failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		shared.copyTo(qTable);
+		trainTime=(System.nanoTime()-start)/1e6;
+		this.policy=extractPolicy();
+	}
+
+	/**
+	 * The Q-learning loop of {@link QLearningAgent#train()}, run by one worker on the shared table
+	 */
+	private void runEpisodes(TTTEnvironment environment, int episodes)
+	{
+		Random random=new Random();
+		for (int episode=0; episode<episodes; episode++) {
+			while (!environment.isTerminal()) {
+				int s=environment.getState();
+				int chosenCell;
+
+				// epsilon greedy
+				if (random.nextDouble()<epsilon) {
+					int cells=index.legalCells(s);
+					for (int skip=random.nextInt(Integer.bitCount(cells)); skip>0; skip--)
+						cells&=cells-1;
+					chosenCell=Integer.numberOfTrailingZeros(cells);
+				} else
+					chosenCell=shared.argmaxQ(s);
+
+				double reward;
+				try {
+					reward=environment.step(chosenCell);
+				} catch (IllegalMoveException e) {
+					System.out.println("Illegal move attempted "+e.getMessage());
+					break;
+				}
+
+				int nextState=environment.getTargetState();
+				double nextMaxQValue=index.isTerminal(nextState) ? 0.0 : shared.maxQ(nextState);
+				shared.update(s, chosenCell, alpha, reward+discount*nextMaxQValue);
+			}
+			environment.reset();
+		}
+	}
+
+	/**
+	 * @return how long the last call to {@link #train()} took, in milliseconds
+	 */
+	public double getTrainTime()
+	{
+		return trainTime;
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		int episodes=1000000;
+		ParallelQLearningAgent agent=new ParallelQLearningAgent(new Supplier<Agent>() {
+			public Agent get()
+			{
+				return new RandomAgent();
+			}
+		}, 0.1, episodes, 0.9, Runtime.getRuntime().availableProcessors());
+		System.out.println("Trained "+episodes+" episodes with "+agent.threads+" threads in "+agent.getTrainTime()+"ms");
+
+		//play the agent against a human agent.
+		HumanAgent d=new HumanAgent();
+		Game g=new Game(agent, d, d);
+		g.playOut();
+	}
+
+}
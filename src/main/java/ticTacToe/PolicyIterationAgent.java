@@ -1,9 +1,9 @@
 package ticTacToe;
 
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Random;
 /**
  * A policy iteration agent. You should implement the following methods:
@@ -34,6 +34,24 @@ public class PolicyIterationAgent extends Agent {
 	
 	double discount=0.9;
 	
+	/**
+	 * If true, {@link #policyValues} and {@link #curPolicy} only hold canonical games (see {@link Game#canonical()}).
+	 */
+	boolean symmetric=false;
+	
+	/**
+	 * The compiled form of {@link #mdp}, built by {@link #initValues()}
+	 */
+	CompiledMDP model;
+	
+	/**
+	 * The values of the states under the current policy and the current policy itself (an action id of {@link #model}, 
+	 * -1 where X has no move), both indexed by {@link StateIndex}. {@link #policyValues} and {@link #curPolicy} are
+	 * filled in from these at the end of {@link #train()}.
+	 */
+	double[] values;
+	int[] actions;
+	
 	/**
 	 * The mdp model used, see {@link TTTMDP}
 	 */
@@ -75,6 +93,41 @@ public class PolicyIterationAgent extends Agent {
 		initRandomPolicy();
 		train();
 	}
+	
+	/**
+	 * Use this constructor to only store and update canonical states, i.e. one state per class of 
+	 * rotations/reflections of the board.
+	 * @param discountFactor
+	 * @param symmetric
+	 */
+	public PolicyIterationAgent(double discountFactor, boolean symmetric) {
+		
+		this.discount=discountFactor;
+		this.symmetric=symmetric;
+		this.mdp=new TTTMDP();
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	
+	/**
+	 * @return an agent trained with modified policy iteration, doing {@code evalSweeps} in-place evaluation sweeps per 
+	 * round, see {@link #setModified(int)}.
+	 * @param discountFactor
+	 * @param evalSweeps
+	 */
+	public static PolicyIterationAgent modified(double discountFactor, int evalSweeps) {
+		
+		PolicyIterationAgent agent=new PolicyIterationAgent((Policy) null);
+		agent.discount=discountFactor;
+		agent.mdp=new TTTMDP();
+		agent.setModified(evalSweeps);
+		agent.initValues();
+		agent.initRandomPolicy();
+		agent.train();
+		return agent;
+	}
+	
 	/**
 	 * Use this constructor to set the various parameters of the Tic-Tac-Toe MDP
 	 * @param discountFactor
@@ -91,16 +144,31 @@ public class PolicyIterationAgent extends Agent {
 		initRandomPolicy();
 		train();
 	}
+	
+	/**
+	 * Trains the agent on {@code mdp}, e.g. one with an {@link OpponentModel} other than uniformly random, so that it 
+	 * learns the best response to that opponent.
+	 * @param discountFactor
+	 * @param mdp
+	 */
+	public PolicyIterationAgent(double discountFactor, TTTMDP mdp)
+	{
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	
 	/**
-	 * Initialises the {@link #policyValues} map, and sets the initial value of all states to 0 
-	 * (V0 under some policy pi ({@link #curPolicy} from the lectures). Uses {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do this. 
+	 * Compiles the {@link #mdp} (see {@link TTTMDP#compile()}) and sets the initial value of all states to 0 
+	 * (V0 under some policy pi ({@link #curPolicy} from the lectures). 
 	 * 
 	 */
 	public void initValues()
 	{
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
-			this.policyValues.put(g, 0.0);
+		model=mdp.compile(symmetric);
+		values=new double[model.numStates()];
 		
 	}
 	
@@ -108,23 +176,19 @@ public class PolicyIterationAgent extends Agent {
 	 *  You should implement this method to initially generate a random policy, i.e. fill the {@link #curPolicy} for every state. Take care that the moves you choose
 	 *  for each state ARE VALID. You can use the {@link Game#getPossibleMoves()} method to get a list of valid moves and choose 
 	 *  randomly between them. 
+	 *  
+	 *  The policy is kept as an action id per state in {@link #actions}; {@link #curPolicy} is filled in from it by {@link #train()}.
 	 */
 	public void initRandomPolicy()
 	{
 		Random random = new Random();
+		actions=new int[model.numStates()];
+		Arrays.fill(actions, -1);
 		// policy initialisation with random moves for each state
-		for (Game state : policyValues.keySet()) {
-			if (state.isTerminal()) {
-				continue;
-			}
-			// get a list of all valid moves for current state
-			List<Move> possibleMoves = state.getPossibleMoves();
-			// select a random move from list of possible moves	
-			if (!possibleMoves.isEmpty()) {
-				Move randomMove = possibleMoves.get(random.nextInt(possibleMoves.size()));
-				// store random mvoe in curPolicy as action for current state
-				curPolicy.put(state, randomMove);
-			}
+		for (int s : model.decisionStates()) {
+			// select a random move from the valid moves of the state
+			int first = model.actionStart(s);
+			actions[s] = first + random.nextInt(model.actionEnd(s) - first);
 		}
 	}
 	
@@ -132,51 +196,34 @@ public class PolicyIterationAgent extends Agent {
 	/**
 	 * Performs policy evaluation steps until the maximum change in values is less than {@code delta}, in other words
 	 * until the values under the currrent policy converge. After running this method, 
-	 * the {@link PolicyIterationAgent#policyValues} map should contain the values of each reachable state under the current policy. 
+	 * the {@link PolicyIterationAgent#values} array should contain the values of each reachable state under the current policy. 
 	 * You should use the {@link TTTMDP} {@link PolicyIterationAgent#mdp} provided to do this.
 	 *
 	 * @param delta
 	 */
 	protected void evaluatePolicy(double delta)
 	{
+		int[] states = model.decisionStates();
+		double[] next = new double[values.length];
 		while (true) {
-			// new map to store updated values
-			HashMap<Game, Double> newPolicyValues = new HashMap<>();
 			boolean converged = true;
 
-			// loop over each state in current policy
-			for (Game state : policyValues.keySet()) {
-				if (state.isTerminal()) {
-					newPolicyValues.put(state, 0.0);
-					continue;
-				}
-
-				// get action set by current policy pi(s) 
-				Move action = curPolicy.get(state);
-				// get all possible transitions for action
-				List<TransitionProb> transitions = mdp.generateTransitions(state, action);
-				double newVal = 0.0;
-
-				// calculate new value V_pi(s) using the Bellman equation 
-				for (TransitionProb transition : transitions) {
-					Game nextState = transition.outcome.sPrime; // s'
-					double probability = transition.prob; // T(s,pi(s),s')
-					double reward = transition.outcome.localReward; // R(s,pi(s),s')
-
-					// sum up expected rewards for taking that action 
-					newVal += probability * (reward + discount * policyValues.get(nextState));
-				}
-				// update value for state
-				newPolicyValues.put(state, newVal);
+			// terminal states have no action and keep the value 0
+			for (int s : states) {
+				// V_pi(s) = sum over s' of T(s,pi(s),s')[R(s,pi(s),s') + discount * V_pi(s')]
+				double newVal = model.qValue(actions[s], values, discount);
+				next[s] = newVal;
 
 				// check if change in value exceeds delta 
 				// if not, then policy has converged
-				if (Math.abs(newVal - policyValues.get(state)) > delta) {
+				if (Math.abs(newVal - values[s]) > delta) {
 					converged = false;
 				}
 			}
-			// update policy values with new values 
-			policyValues = newPolicyValues;
+			// swap in the updated values
+			double[] tmp = values;
+			values = next;
+			next = tmp;
 			// break if converged
 			if (converged) {
 				break;
@@ -188,7 +235,7 @@ public class PolicyIterationAgent extends Agent {
 	
 	
 	/**This method should be run AFTER the {@link PolicyIterationAgent#evaluatePolicy} train method to improve the current policy according to 
-	 * {@link PolicyIterationAgent#policyValues}. You will need to do a single step of expectimax from each game (state) key in {@link PolicyIterationAgent#curPolicy} 
+	 * {@link PolicyIterationAgent#values}. You will need to do a single step of expectimax from each game (state) key in {@link PolicyIterationAgent#curPolicy} 
 	 * to look for a move/action that potentially improves the current policy. 
 	 * 
 	 * @return true if the policy improved. Returns false if there was no improvement, i.e. the policy already returned the optimal actions.
@@ -197,40 +244,13 @@ public class PolicyIterationAgent extends Agent {
 	{
 		boolean policyImproved = false;
 
-		// loop through each game state in current policy
-		for (Game state : curPolicy.keySet()) {
-			if (state.isTerminal()) {
-				continue;
-			}
-
-			Move bestAction = null;
-			// value initialised for best action q-value
-			double maxQValue = Double.NEGATIVE_INFINITY;
-
-			// evaluate all possible actions for current state
-			for (Move action : state.getPossibleMoves()) {
-				double actionValue = 0.0;
-				// generate all possible transitions for action
-				// update the action value Q*(s,a) using the Bellman equation
-				List<TransitionProb> transitions = mdp.generateTransitions(state, action);
-				for (TransitionProb transition : transitions) {
-					Game nextState = transition.outcome.sPrime; // s'
-					double probability = transition.prob; // T(s,a,s')
-					double reward = transition.outcome.localReward; // R(s,a,s') 
-					
-					// sum up expected rewards of that action
-					actionValue += probability * (reward + discount * policyValues.get(nextState));
-				}
-
-				// use new action value to update optimal action if it is better 
-				if (actionValue > maxQValue) {
-					maxQValue = actionValue;
-					bestAction = action; // argmax
-				}
-			}
+		// loop through each decision state of the model
+		for (int s : model.decisionStates()) {
+			// argmax over a of Q(s,a) under the current policy values
+			int bestAction = model.greedyAction(s, values, discount);
 			// update policy if a different action found
-			if (bestAction != null && !bestAction.equals(curPolicy.get(state))) {
-				curPolicy.put(state, bestAction);
+			if (bestAction != actions[s]) {
+				actions[s] = bestAction;
 				policyImproved = true;
 			}
 		}
@@ -242,6 +262,49 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	double delta=0.1;
 	
+	/**
+	 * If positive, {@link #train()} runs modified policy iteration: each round does only this many (in-place) evaluation 
+	 * sweeps, and the improvement step only re-checks states whose successors' values changed since the last round.
+	 * If 0, every round evaluates the policy until convergence and re-checks every state.
+	 */
+	int evalSweeps=0;
+	
+	/**
+	 * The number of evaluation/improvement rounds, and of states whose action was re-checked in improvement steps, in 
+	 * the last call to {@link #train()}
+	 */
+	int rounds=0;
+	long improvementChecks=0;
+	
+	/**
+	 * Switches to modified policy iteration with {@code evalSweeps} evaluation sweeps per round, or back to standard 
+	 * policy iteration if 0. Takes effect the next time the agent is trained.
+	 * @param evalSweeps
+	 */
+	public void setModified(int evalSweeps)
+	{
+		if (evalSweeps<0)
+			throw new IllegalArgumentException("The number of evaluation sweeps should not be negative");
+		
+		this.evalSweeps=evalSweeps;
+	}
+	
+	/**
+	 * @return the number of evaluation/improvement rounds done in the last training run
+	 */
+	public int getRounds()
+	{
+		return rounds;
+	}
+	
+	/**
+	 * @return the number of times the improvement steps of the last training run checked a state for a better action
+	 */
+	public long getImprovementChecks()
+	{
+		return improvementChecks;
+	}
+	
 	/**
 	 * This method should perform policy evaluation and policy improvement steps until convergence (i.e. until the policy
 	 * no longer changes), and so uses your 
@@ -249,18 +312,95 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	public void train()
 	{
-		while (true) {
-			// evaluate policy until convergence
-	        evaluatePolicy(delta);
-	        // improve policy using state values
-	        boolean policyImproved = improvePolicy();
-	        // break once policy stops improving, policy stable
-	        if (!policyImproved) {
-	            break;
-	        }
-	    }
+		rounds=0;
+		improvementChecks=0;
+		if (evalSweeps>0)
+			trainModified();
+		else
+			while (true) {
+				rounds++;
+				improvementChecks+=model.decisionStates().length;
+				// evaluate policy until convergence
+		        evaluatePolicy(delta);
+		        // improve policy using state values
+		        boolean policyImproved = improvePolicy();
+		        // break once policy stops improving, policy stable
+		        if (!policyImproved) {
+		            break;
+		        }
+		    }
 	    // store the final stable policy
-	    this.policy = new Policy(curPolicy);
+	    curPolicy = model.toPolicyMap(actions);
+	    policyValues = model.toValueMap(values);
+	    this.policy = symmetric ? new SymmetricPolicy(curPolicy) : new Policy(curPolicy);
+	}
+	
+	/**
+	 * Modified policy iteration. Each round does {@link #evalSweeps} in-place sweeps of policy evaluation and then an 
+	 * improvement step over the dirty states only: those with a successor whose value changed since they were last 
+	 * checked (every state is dirty in the first round). This stops when the policy is stable and the last evaluation 
+	 * sweep changed no value by more than {@link #delta}.
+	 */
+	protected void trainModified()
+	{
+		int[] states = model.decisionStates();
+		boolean[] dirty = new boolean[values.length];
+		boolean[] changed = new boolean[values.length];
+		for (int s : states)
+			dirty[s] = true;
+		
+		while (true) {
+			rounds++;
+			double maxChange = 0.0;
+			for (int sweep = 0; sweep < evalSweeps; sweep++) {
+				maxChange = 0.0;
+				// backwards, so that successors (which have more stones) are mostly updated first
+				for (int i = states.length - 1; i >= 0; i--) {
+					int s = states[i];
+					// V_pi(s) = sum over s' of T(s,pi(s),s')[R(s,pi(s),s') + discount * V_pi(s')]
+					double newVal = model.qValue(actions[s], values, discount);
+					double change = Math.abs(newVal - values[s]);
+					if (change > 0) {
+						changed[s] = true;
+						maxChange = Math.max(maxChange, change);
+					}
+					values[s] = newVal;
+				}
+			}
+			
+			// a state's q-values only move if one of its successors' values did
+			for (int s : states) {
+				if (!changed[s])
+					continue;
+				changed[s] = false;
+				for (int i = model.predecessorsStart(s); i < model.predecessorsStart(s + 1); i++)
+					dirty[model.predecessor(i)] = true;
+			}
+			
+			boolean policyImproved = false;
+			for (int s : states) {
+				if (!dirty[s])
+					continue;
+				dirty[s] = false;
+				improvementChecks++;
+				int bestAction = model.greedyAction(s, values, discount);
+				if (bestAction != actions[s]) {
+					actions[s] = bestAction;
+					policyImproved = true;
+				}
+			}
+			
+			if (!policyImproved && maxChange <= delta)
+				break;
+		}
+	}
+	
+	/**
+	 * @return the value of game {@code g} after training, 0 if it's not a state of the MDP
+	 */
+	public double getValue(Game g)
+	{
+		return model.value(values, g);
 	}
 	
 	public static void main(String[] args) throws IllegalMoveException
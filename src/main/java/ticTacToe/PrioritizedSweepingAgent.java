@@ -0,0 +1,174 @@
+package ticTacToe;
+
+
+import java.util.PriorityQueue;
+
+/**
+ * A Value Iteration agent that uses prioritized sweeping instead of full sweeps over all states.
+ *
+ * States are kept in a priority queue ordered by their Bellman error, |backup(s) - V(s)|. The state with the largest
+ * error is backed up, and then only its predecessors (the states with an action that can lead to it, see
+ * {@link CompiledMDP#predecessorsStart(int)}) can have a new Bellman error, so only they are re-prioritised. This stops
+ * once no state has an error larger than {@link #theta}.
+ *
+ * Most states stop changing after a handful of full sweeps, so this performs far fewer backups than
+ * {@link ValueIterationAgent#iterate()}: see {@link #getBackups()} and {@link #getSweepEquivalent()}.
+ *
+ */
+public class PrioritizedSweepingAgent extends ValueIterationAgent {
+
+	/**
+	 * States whose Bellman error is at most theta are not (re-)queued
+	 */
+	double theta=1e-9;
+
+	/**
+	 * The number of value updates (backups of a popped state), and of Bellman errors computed to (re-)prioritise
+	 * states, by the last call to {@link #iterate()}
+	 */
+	long backups=0;
+	long priorityUpdates=0;
+
+
+	/**
+	 * Trains the agent on the default MDP with a discount factor of 0.9
+	 */
+	public PrioritizedSweepingAgent()
+	{
+		this(0.9, new TTTMDP());
+	}
+
+	/**
+	 * Use this constructor to set the various parameters of the Tic-Tac-Toe MDP
+	 * @param discountFactor
+	 * @param winReward
+	 * @param loseReward
+	 * @param livingReward
+	 * @param drawReward
+	 */
+	public PrioritizedSweepingAgent(double discountFactor, double winReward, double loseReward, double livingReward, double drawReward)
+	{
+		this(discountFactor, new TTTMDP(winReward, loseReward, livingReward, drawReward));
+	}
+
+	public PrioritizedSweepingAgent(double discountFactor, TTTMDP mdp)
+	{
+		super((Policy) null);
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		initValues();
+		train();
+	}
+
+	/**
+	 * Runs prioritized sweeping until no state has a Bellman error above {@link #theta}. {@link #k} is not used.
+	 */
+	@Override
+	public void iterate()
+	{
+		if (model==null)
+			initValues();
+
+		// priority[s] is the Bellman error s was last queued with, 0 if it's not queued
+		double[] priority=new double[values.length];
+		PriorityQueue<Entry> queue=new PriorityQueue<Entry>();
+		backups=0;
+		priorityUpdates=0;
+
+		for (int s : model.decisionStates()) {
+			double error=Math.abs(model.backup(s, values, discount)-values[s]);
+			priorityUpdates++;
+			if (error>theta) {
+				priority[s]=error;
+				queue.add(new Entry(s, error));
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			Entry e=queue.poll();
+			// skip entries superseded by a later, higher, priority for the same state
+			if (e.priority!=priority[e.state])
+				continue;
+
+			priority[e.state]=0.0;
+			values[e.state]=model.backup(e.state, values, discount);
+			backups++;
+
+			// only the predecessors of the updated state can have changed Bellman errors
+			for (int i=model.predecessorsStart(e.state); i<model.predecessorsStart(e.state+1); i++) {
+				int p=model.predecessor(i);
+				double error=Math.abs(model.backup(p, values, discount)-values[p]);
+				priorityUpdates++;
+				if (error>theta && error>priority[p]) {
+					priority[p]=error;
+					queue.add(new Entry(p, error));
+				}
+			}
+		}
+
+		sweeps=0;
+		residual=0.0;
+		valueFunction=model.toValueMap(values);
+	}
+
+	/**
+	 * @return the number of state values updated by the last call to {@link #iterate()}
+	 */
+	public long getBackups()
+	{
+		return backups;
+	}
+
+	/**
+	 * @return the number of Bellman errors computed to prioritise states in the last call to {@link #iterate()}
+	 */
+	public long getPriorityUpdates()
+	{
+		return priorityUpdates;
+	}
+
+	/**
+	 * @return {@link #getBackups()} expressed as a number of full sweeps over all decision states
+	 */
+	public double getSweepEquivalent()
+	{
+		return (double) backups/model.decisionStates().length;
+	}
+
+	/**
+	 * A queued state, highest Bellman error first
+	 */
+	private static class Entry implements Comparable<Entry>
+	{
+		final int state;
+		final double priority;
+
+		Entry(int state, double priority)
+		{
+			this.state=state;
+			this.priority=priority;
+		}
+
+		@Override
+		public int compareTo(Entry other)
+		{
+			return Double.compare(other.priority, priority);
+		}
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		PrioritizedSweepingAgent ps=new PrioritizedSweepingAgent();
+		ValueIterationAgent vi=new ValueIterationAgent(0.9, 1e-9, false);
+		System.out.println("Prioritized sweeping: "+ps.getBackups()+" backups ("+ps.getSweepEquivalent()+" sweeps), "
+				+ps.getPriorityUpdates()+" priority updates");
+		System.out.println("Value iteration: "+vi.getSweeps()+" sweeps, "+(long) vi.getSweeps()*vi.model.decisionStates().length+" backups");
+
+		//play the agent against a human agent.
+		HumanAgent d=new HumanAgent();
+		Game g=new Game(ps, d, d);
+		g.playOut();
+
+	}
+
+}
@@ -1,5 +1,7 @@
 package ticTacToe;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
@@ -47,6 +49,179 @@ public class QLearningAgent extends Agent {
 	
 	QTable qTable=new QTable();
 	
+	/**
+	 * The state index the q-table is laid out by
+	 */
+	final StateIndex index=StateIndex.get();
+	
+	/**
+	 * If true, the q-table only holds canonical games (see {@link Game#canonical()}), and every (game, move) pair is
+	 * looked up and updated through its canonical form. See {@link Config#setSymmetric(boolean)}.
+	 */
+	boolean symmetric=false;
+	
+	/**
+	 * The experience replay buffer and the number of transitions replayed after each move, see
+	 * {@link Config#setReplay(ReplayBuffer, int)}. Null for none.
+	 */
+	ReplayBuffer replay=null;
+	int replayBatch=8;
+	
+	/**
+	 * The checkpoints and the stopping rule, see {@link Config#setEarlyStopping(int, double, double)}. An
+	 * {@link #evalInterval} of 0 disables checkpoints.
+	 */
+	int evalInterval=0;
+	double targetLossRate=-1;
+	double qTolerance=0;
+	int patience=3;
+	
+	/**
+	 * The opponents the greedy policy is evaluated against at a checkpoint, their names in the learning curve, and the
+	 * number of games played against each, see {@link Config#setEvaluation(OpponentModel[], String[], int)}
+	 */
+	OpponentModel[] evalOpponents={OpponentModel.uniform(), OpponentModel.aggressive(), OpponentModel.defensive()};
+	String[] evalNames={"random", "aggressive", "defensive"};
+	int evalGames=100;
+	
+	/**
+	 * The checkpoints of the last call to {@link #train()}, and the number of episodes it played
+	 */
+	final List<Checkpoint> learningCurve=new ArrayList<Checkpoint>();
+	int episodesPlayed;
+	
+	/**
+	 * The state of the greedy policy at a checkpoint: its loss rate against each evaluation opponent, and the largest
+	 * change of a q-value since the previous checkpoint.
+	 */
+	public static class Checkpoint
+	{
+		final int episode;
+		final double[] lossRates;
+		final double qChange;
+		
+		Checkpoint(int episode, double[] lossRates, double qChange)
+		{
+			this.episode=episode;
+			this.lossRates=lossRates;
+			this.qChange=qChange;
+		}
+		
+		public int getEpisode()
+		{
+			return episode;
+		}
+		
+		/**
+		 * @return the fraction of games lost against evaluation opponent {@code i}
+		 */
+		public double getLossRate(int i)
+		{
+			return lossRates[i];
+		}
+		
+		public double getQChange()
+		{
+			return qChange;
+		}
+		
+		public String toString()
+		{
+			return episode+" "+Arrays.toString(lossRates)+" "+qChange;
+		}
+	}
+	
+	/**
+	 * The optional features of a {@link QLearningAgent}, set before it is built and trained; they can be combined freely.
+	 * By default none is on: the q-table is not symmetric, there is no replay and training runs for all episodes.
+	 */
+	public static class Config
+	{
+		boolean symmetric=false;
+		ReplayBuffer replay=null;
+		int replayBatch=8;
+		int evalInterval=0;
+		double targetLossRate=-1;
+		double qTolerance=0;
+		int patience=3;
+		OpponentModel[] evalOpponents={OpponentModel.uniform(), OpponentModel.aggressive(), OpponentModel.defensive()};
+		String[] evalNames={"random", "aggressive", "defensive"};
+		int evalGames=100;
+		
+		/**
+		 * If {@code symmetric} is true, the q-table only holds canonical games, and all 8 rotations/reflections of a
+		 * position share their q-values, so each one is effectively visited 8 times as often.
+		 */
+		public void setSymmetric(boolean symmetric)
+		{
+			this.symmetric=symmetric;
+		}
+		
+		/**
+		 * Also stores every transition played in {@code replay}, and after each move learns again from
+		 * {@code replayBatch} transitions drawn from it, so each game played is used many times.
+		 * @param replay the experience replay buffer, uniform or prioritized; null for none
+		 * @param replayBatch 1 or more
+		 */
+		public void setReplay(ReplayBuffer replay, int replayBatch)
+		{
+			if (replayBatch<1)
+				throw new IllegalArgumentException("The replay batch should be at least 1");
+			
+			this.replay=replay;
+			this.replayBatch=replayBatch;
+		}
+		
+		/**
+		 * Evaluates the greedy policy every {@code evalInterval} episodes (a checkpoint), and stops training once it
+		 * has lost at most {@code targetLossRate} of its games against every evaluation opponent, or no q-value has
+		 * changed by {@code qTolerance} since the previous checkpoint, at {@link #setPatience(int) patience}
+		 * checkpoints in a row.
+		 * @param evalInterval 0 to disable checkpoints
+		 * @param targetLossRate negative to ignore loss rates
+		 * @param qTolerance 0 to ignore q-value changes
+		 */
+		public void setEarlyStopping(int evalInterval, double targetLossRate, double qTolerance)
+		{
+			if (evalInterval<0)
+				throw new IllegalArgumentException("The evaluation interval should not be negative");
+			
+			this.evalInterval=evalInterval;
+			this.targetLossRate=targetLossRate;
+			this.qTolerance=qTolerance;
+		}
+		
+		/**
+		 * @param patience the number of checkpoints in a row that must meet the stopping rule, 1 or more; 3 by default
+		 */
+		public void setPatience(int patience)
+		{
+			if (patience<1)
+				throw new IllegalArgumentException("Patience should be at least 1");
+			
+			this.patience=patience;
+		}
+		
+		/**
+		 * Sets the opponents the greedy policy plays at each checkpoint. By default these model {@link RandomAgent},
+		 * {@link AggressiveAgent} and {@link DefensiveAgent}, with 100 games against each.
+		 * @param opponents
+		 * @param names their names, in the same order, e.g. for printing the learning curve
+		 * @param games the number of games played against each opponent, 1 or more
+		 */
+		public void setEvaluation(OpponentModel[] opponents, String[] names, int games)
+		{
+			if (opponents.length==0 || opponents.length!=names.length)
+				throw new IllegalArgumentException("There should be one name per evaluation opponent, and at least one");
+			if (games<1)
+				throw new IllegalArgumentException("Games should be at least 1");
+			
+			this.evalOpponents=opponents.clone();
+			this.evalNames=names.clone();
+			this.evalGames=games;
+		}
+	}
+	
 	
 	/**
 	 * This is the Reinforcement Learning environment that this agent will interact with when it is training.
@@ -63,11 +238,35 @@ public class QLearningAgent extends Agent {
 	 * @param numEpisodes The number of episodes (games) to train for
 	 */
 	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount)
+	{
+		this(opponent, learningRate, numEpisodes, discount, new Config());
+	}
+	
+	/**
+	 * As above, with the optional features set in {@code config}. Later changes to {@code config} don't affect the
+	 * agent.
+	 * @param opponent
+	 * @param learningRate
+	 * @param numEpisodes the most episodes to train for
+	 * @param discount
+	 * @param config
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, Config config)
 	{
 		env=new TTTEnvironment(opponent);
 		this.alpha=learningRate;
 		this.numEpisodes=numEpisodes;
 		this.discount=discount;
+		this.symmetric=config.symmetric;
+		this.replay=config.replay;
+		this.replayBatch=config.replayBatch;
+		this.evalInterval=config.evalInterval;
+		this.targetLossRate=config.targetLossRate;
+		this.qTolerance=config.qTolerance;
+		this.patience=config.patience;
+		this.evalOpponents=config.evalOpponents.clone();
+		this.evalNames=config.evalNames.clone();
+		this.evalGames=config.evalGames;
 		initQTable();
 		train();
 	}
@@ -79,19 +278,93 @@ public class QLearningAgent extends Agent {
 	
 	protected void initQTable()
 	{
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
+		//all non-terminal states where it is X's turn
+		for (int s=0; s<index.size(); s++)
 		{
-			List<Move> moves=g.getPossibleMoves();
-			for(Move m: moves)
-			{
-				this.qTable.addQValue(g, m, 0.0);
-				//System.out.println("initing q value. Game:"+g);
-				//System.out.println("Move:"+m);
-			}
+			if (index.whoseTurn(s)!='X' || (symmetric && !index.isCanonical(s)))
+				continue;
 			
+			int cells=index.legalCells(s);
+			for (int cell=0; cell<9; cell++)
+				if ((cells&(1<<cell))!=0)
+					qTable.setQ(s, cell, 0.0);
+		}
+		
+	}
+	
+	/**
+	 * @return Q(g,m), looked up through the canonical form of {@code g} if {@link #symmetric} is set; NaN if {@code g}
+	 *         can't be reached from an empty board.
+	 */
+	public double getQValue(Game g, Move m)
+	{
+		int s=index.indexOf(g);
+		return s<0 ? Double.NaN : q(s, 3*m.x+m.y);
+	}
+	
+	/**
+	 * Sets Q(g,m), through the canonical form of {@code g} if {@link #symmetric} is set.
+	 * @throws IllegalArgumentException if {@code g} can't be reached from an empty board
+	 */
+	protected void setQValue(Game g, Move m, double v)
+	{
+		int s=index.indexOf(g);
+		if (s<0)
+			throw new IllegalArgumentException("Game can't be reached from an empty board:"+g);
+
+		setQ(s, 3*m.x+m.y, v);
+	}
+	
+	/**
+	 * @return Q(s,cell) for state index {@code s}, through its canonical form if {@link #symmetric} is set.
+	 */
+	protected double q(int s, int cell)
+	{
+		if (!symmetric)
+			return qTable.q(s, cell);
+		
+		return qTable.q(index.canonical(s), Game.SYMMETRIES[index.canonicalTransform(s)][cell]);
+	}
+	
+	protected void setQ(int s, int cell, double v)
+	{
+		if (!symmetric)
+		{
+			qTable.setQ(s, cell, v);
+			return;
 		}
 		
+		qTable.setQ(index.canonical(s), Game.SYMMETRIES[index.canonicalTransform(s)][cell], v);
+	}
+	
+	/**
+	 * @return max over cells of Q(s,cell); symmetries don't change it
+	 */
+	protected double maxQ(int s)
+	{
+		return qTable.maxQ(symmetric ? index.canonical(s) : s);
+	}
+	
+	/**
+	 * @return the cell with the largest q-value in state {@code s}, mapped back from the canonical form if
+	 * {@link #symmetric} is set; -1 if s has no q-values
+	 */
+	protected int argmaxQ(int s)
+	{
+		if (!symmetric)
+			return qTable.argmaxQ(s);
+		
+		int cell=qTable.argmaxQ(index.canonical(s));
+		return cell<0 ? -1 : Game.SYMMETRIES[Game.INVERSE[index.canonicalTransform(s)]][cell];
+	}
+	
+	/**
+	 * Use this constructor to initialise your agent with an existing policy, without training
+	 * @param p
+	 */
+	public QLearningAgent(Policy p)
+	{
+		super(p);
 	}
 	
 	/**
@@ -115,72 +388,60 @@ public class QLearningAgent extends Agent {
 	
 	public void train()
 	{	
+		Random random = new Random();
+		learningCurve.clear();
+		double[] lastValues = evalInterval > 0 ? qTable.values.clone() : null;
+		int stable = 0;
 		for (int episode = 0; episode < numEpisodes; episode++) {
 			while (!env.isTerminal()) {
 				// get state for current game
-				Game state = env.getCurrentGameState();
-		
-				Random random = new Random();
-				Move chosenMove = null;		
-				// get list of all possible moves for state
-				List<Move> possibleMoves = state.getPossibleMoves();
-				double qValue = 0;
-				double maxQValue = Double.NEGATIVE_INFINITY;
+				int s = env.getState();
+				int chosenCell;
 				
 				// choose move based on epsilon greedy policy (exploration or exploitation) 
 				if(random.nextDouble() < epsilon) {	
 					// if random value below given epsilon value
 					// exploration, choose a random move
-					chosenMove = possibleMoves.get(random.nextInt(possibleMoves.size()));
+					int cells = index.legalCells(s);
+					for (int skip = random.nextInt(Integer.bitCount(cells)); skip > 0; skip--)
+						cells &= cells - 1;
+					chosenCell = Integer.numberOfTrailingZeros(cells);
 				} else {
 					// exploitation, choose the best move based on the q values (s,a)
-					for (Move move : possibleMoves) {
-						// get q value for each state action pair
-						qValue = qTable.getQValue(state, move);
-						// update max Q value and optimal move accordingly
-						if (qValue >= maxQValue) {
-							maxQValue = qValue;
-							chosenMove = move;
-						}
-					}
+					chosenCell = argmaxQ(s);
 				}
 				// use chosen move then observe outcome sample
-				Outcome outcome;
+				double reward;
 				try {
-					outcome = env.executeMove(chosenMove);
+					reward = env.step(chosenCell);
 				} catch (IllegalMoveException e) {
 					System.out.println("Illegal move attempted " + e.getMessage());
 					break;
 				}
 				// sample (s, a, s', r)
-				Game sourceState = outcome.s;
-				Move action = outcome.move;
-				Game nextState = outcome.sPrime;
-				double reward = outcome.localReward;
+				int nextState = env.getTargetState();
+				boolean done = index.isTerminal(nextState);
 				
-				// q value for state action pair Q(s,a)
-				double currentQValue = qTable.getQValue(sourceState, action);
+				update(s, chosenCell, reward, nextState, done);
 				
-				// get max q value for next state
-				double nextMaxQValue = Double.NEGATIVE_INFINITY;
-				if (nextState.isTerminal()) {
-					nextMaxQValue = 0.0;
-				} else {
-					for (Move move : nextState.getPossibleMoves()){
-						double nextQValue = qTable.getQValue(nextState, move);
-						if (nextQValue > nextMaxQValue) {
-							nextMaxQValue = nextQValue;
-						}
-					}
+				// learn from past transitions too
+				if (replay != null) {
+					replay.add(s, chosenCell, reward, nextState, done);
+					replay(random);
 				}
-				
-				// update q value for state action pair 
-				double updatedQValue = (1 - alpha) * currentQValue + alpha * (reward + discount * nextMaxQValue);
-				// update q table
-				qTable.addQValue(sourceState, action, updatedQValue);
 			}
 			// reset environment for next episode
 			env.reset();
+			episodesPlayed = episode + 1;
+			
+			// evaluate the greedy policy, and stop if it's no longer improving
+			if (evalInterval > 0 && episodesPlayed % evalInterval == 0) {
+				Checkpoint c = checkpoint(episodesPlayed, lastValues, random);
+				learningCurve.add(c);
+				stable = meetsStoppingRule(c) ? stable + 1 : 0;
+				if (stable >= patience)
+					break;
+			}
 		}
         
 		//--------------------------------------------------------
@@ -192,6 +453,117 @@ public class QLearningAgent extends Agent {
 			//System.exit(1);
 		}
 	}
+	
+	/**
+	 * The Q-learning update for the transition (s, cell, reward, next)
+	 * @return the TD error, before the update
+	 */
+	protected double update(int s, int cell, double reward, int next, boolean done)
+	{
+		// q value for state action pair Q(s,a)
+		double currentQValue = q(s, cell);
+		
+		// get max q value for next state
+		double nextMaxQValue = done ? 0.0 : maxQ(next);
+		
+		double tdError = reward + discount * nextMaxQValue - currentQValue;
+		setQ(s, cell, currentQValue + alpha * tdError);
+		return tdError;
+	}
+	
+	/**
+	 * Measures the current greedy policy against every evaluation opponent, and how much the q-values changed since
+	 * {@code lastValues}, which is then updated.
+	 */
+	private Checkpoint checkpoint(int episode, double[] lastValues, Random random)
+	{
+		double[] lossRates = new double[evalOpponents.length];
+		for (int i = 0; i < evalOpponents.length; i++)
+			lossRates[i] = (double) lossesAgainst(evalOpponents[i], evalGames, random) / evalGames;
+		
+		double qChange = 0.0;
+		for (int i = 0; i < lastValues.length; i++) {
+			// NaN (no q-value) is never larger
+			double change = Math.abs(qTable.values[i] - lastValues[i]);
+			if (change > qChange)
+				qChange = change;
+			lastValues[i] = qTable.values[i];
+		}
+		return new Checkpoint(episode, lossRates, qChange);
+	}
+	
+	private boolean meetsStoppingRule(Checkpoint c)
+	{
+		if (qTolerance > 0 && c.qChange < qTolerance)
+			return true;
+		if (targetLossRate < 0)
+			return false;
+		for (double lossRate : c.lossRates)
+			if (lossRate > targetLossRate)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Plays {@code games} games of the greedy policy of the q-table, as X moving first, against {@code opponent}, on
+	 * {@link StateIndex} indexes, so neither the policy nor any {@link Game} is built.
+	 * @return the number of games lost
+	 */
+	int lossesAgainst(OpponentModel opponent, int games, Random random)
+	{
+		double[] probs = new double[9];
+		int start = index.indexOfHash(1);
+		int losses = 0;
+		for (int game = 0; game < games; game++) {
+			int s = start;
+			while (!index.isTerminal(s)) {
+				int cell;
+				if (index.whoseTurn(s) == 'X')
+					cell = argmaxQ(s);
+				else {
+					opponent.moveDistribution(index.xBits(s), index.oBits(s), 'O', probs);
+					cell = OpponentModel.sample(probs, random.nextDouble());
+				}
+				s = index.successor(s, cell);
+			}
+			if (index.status(s) == Game.O_WON)
+				losses++;
+		}
+		return losses;
+	}
+	
+	/**
+	 * @return the checkpoints of the last call to {@link #train()}, oldest first; empty if checkpoints are disabled
+	 */
+	public List<Checkpoint> getLearningCurve()
+	{
+		return learningCurve;
+	}
+	
+	/**
+	 * @return the number of episodes the last call to {@link #train()} played, which is less than
+	 * {@link #numEpisodes} if it stopped early
+	 */
+	public int getEpisodesPlayed()
+	{
+		return episodesPlayed;
+	}
+	
+	/**
+	 * Learns from {@link #replayBatch} transitions drawn from {@link #replay}, once it holds that many, and updates
+	 * their priorities from the TD errors.
+	 */
+	private void replay(Random random)
+	{
+		if (replay.size() < replayBatch)
+			return;
+		
+		for (int i = 0; i < replayBatch; i++) {
+			int slot = replay.sample(random);
+			double tdError = update(replay.state[slot], replay.cell[slot], replay.reward[slot], replay.next[slot], replay.done[slot]);
+			replay.updatePriority(slot, tdError);
+		}
+	}
 
 
 	/** Implement this method. It should use the q-values in the {@code qTable} to extract a policy and return it.
@@ -204,37 +576,33 @@ public class QLearningAgent extends Agent {
 		HashMap<Game, Move> policyMap = new HashMap<>();
 		
 		// loop through all states in the q table
-		for (Game state : qTable.keySet()) {
-			if (state.isTerminal()) {
+		for (int s = 0; s < index.size(); s++) {
+			if (index.isTerminal(s) || !qTable.hasState(s)) {
 				continue;
 			}
 			
-			// get all possible moves for state
-			List<Move> possibleMoves = state.getPossibleMoves();
-			// initialise max q value
-			double maxQValue = Double.NEGATIVE_INFINITY;
-			Move bestMove = null;
-			
-			for (Move move : possibleMoves) {
-                double qValue = qTable.getQValue(state, move);
-                if (qValue > maxQValue) {
-                    maxQValue = qValue;
-                    bestMove = move;
-                }
-            }
-			// update policy
 			// store best move for the current state in the policy map
-			policyMap.put(state, bestMove);
+			int cell = qTable.argmaxQ(s);
+			Game state = index.game(s);
+			policyMap.put(state, new Move(state.whoseTurn, cell / 3, cell % 3));
 		}
 		
 		// return updated policy map
-		return new Policy(policyMap);
+		return symmetric ? new SymmetricPolicy(policyMap) : new Policy(policyMap);
 	}
 	
 	public static void main(String a[]) throws IllegalMoveException
 	{
 		//Test method to play your agent against a human agent (yourself).
-		QLearningAgent agent=new QLearningAgent();
+		Config config=new Config();
+		config.setEarlyStopping(1000, 0.0, 0.0);
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 40000, 0.9, config);
+		
+		//the learning curve: episodes, loss rates against the evaluation opponents, largest q-value change
+		System.out.println("episode "+Arrays.toString(agent.evalNames)+" q-change");
+		for (Checkpoint c : agent.getLearningCurve())
+			System.out.println(c);
+		System.out.println("Trained for "+agent.getEpisodesPlayed()+" episodes");
 		
 		HumanAgent d=new HumanAgent();
 		
@@ -1,59 +1,123 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.Arrays;
 /**
- * This class a simple implementation of a Q-Table. It's a subclass of {@link java.util.HashMap}, so all the methods from 
- * that class are available. Two methods for adding and retrieving q-values to/from the table are provided.
- * 
+ * This class a simple implementation of a Q-Table. Two methods for adding and retrieving q-values to/from the table are
+ * provided, taking {@link Game} and {@link Move} objects.
+ *
+ * The table is a flat {@code double[]} with one row of 9 cells per state of the {@link StateIndex}: Q(s, cell) is at
+ * {@code 9*s+cell}, where s is the state's index and cell is 3*x+y. Entries that were never set hold NaN. Learners that
+ * already have state indexes can use the primitive methods ({@link #q(int, int)}, {@link #setQ(int, int, double)},
+ * {@link #maxQ(int)} and {@link #argmaxQ(int)}), which don't hash, box or allocate anything.
+ *
+ * The table used to be a {@code HashMap<Game, HashMap<Move, Double>>}, and took any game. It no longer is a map, and
+ * only holds games of the {@link StateIndex}, i.e. games that can be reached from an empty board:
+ * {@link #addQValue(Game, Move, Double)} throws an {@link IllegalArgumentException} for any other game.
+ *
  * @author ae187
  *
  */
-public class QTable extends HashMap<Game, HashMap<Move,Double>> {
+public class QTable {
+
+	final StateIndex index;
+
+	/**
+	 * Q(s, cell) at {@code 9*s+cell}, NaN if not set
+	 */
+	final double[] values;
 
-	
 	public QTable()
 	{
-		super();
+		index=StateIndex.get();
+		values=new double[9*index.size()];
+		Arrays.fill(values, Double.NaN);
 	}
-	
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 1L;
-	
+
 	/**
-	 * 
+	 *
 	 * @param g
 	 * @param m
-	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object 
-	 * and m is a {@link Move} object}
+	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object
+	 * and m is a {@link Move} object}; null if it isn't in the table
 	 */
 	public Double getQValue(Game g, Move m)
 	{
-		if (containsKey(g))
-		{
-			HashMap<Move,Double> moves=get(g);
-			if (moves.containsKey(m))
-				return moves.get(m);
-		}
-		
-		return null;
+		int s=index.indexOf(g);
+		if (s<0)
+			return null;
+
+		double v=values[9*s+3*m.x+m.y];
+		return Double.isNaN(v) ? null : v;
 	}
-	
+
 	/**
-	 * Adds the q-value mapping (g,m)->v to the q-table represented by this map.
+	 * Adds the q-value mapping (g,m)->v to the q-table.
 	 * @param g
 	 * @param m
 	 * @param v
 	 */
 	public void addQValue(Game g, Move m, Double v)
 	{
-		if (!containsKey(g))
-			this.put(g, new HashMap<Move,Double>());
-		
-		this.get(g).put(m, v);
+		int s=index.indexOf(g);
+		if (s<0)
+			throw new IllegalArgumentException("Game can't be reached from an empty board:"+g);
+
+		values[9*s+3*m.x+m.y]=v==null ? Double.NaN : v;
+	}
+
+	/**
+	 * @param s a {@link StateIndex} index
+	 * @param cell 3*x+y
+	 * @return Q(s, cell), NaN if it isn't in the table
+	 */
+	public double q(int s, int cell)
+	{
+		return values[9*s+cell];
+	}
+
+	public void setQ(int s, int cell, double v)
+	{
+		values[9*s+cell]=v;
+	}
+
+	/**
+	 * @return the largest q-value of state {@code s}, negative infinity if it has none
+	 */
+	public double maxQ(int s)
+	{
+		double max=Double.NEGATIVE_INFINITY;
+		for (int i=9*s; i<9*s+9; i++)
+			if (values[i]>max)
+				max=values[i];
+		return max;
+	}
+
+	/**
+	 * @return the cell with the largest q-value in state {@code s} (the first one in case of ties), or -1 if it has none
+	 */
+	public int argmaxQ(int s)
+	{
+		int best=-1;
+		double max=Double.NEGATIVE_INFINITY;
+		for (int cell=0; cell<9; cell++) {
+			double v=values[9*s+cell];
+			if (v>max) {
+				max=v;
+				best=cell;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return true if state {@code s} has at least one q-value in the table
+	 */
+	public boolean hasState(int s)
+	{
+		for (int i=9*s; i<9*s+9; i++)
+			if (!Double.isNaN(values[i]))
+				return true;
+		return false;
 	}
-	
-	
 
 }
@@ -20,13 +20,13 @@ public class RandomPolicy extends Policy{
 		
 		List<IndexPair> pairs=new ArrayList<IndexPair>();
 		
-		for(int i=0;i<3;i++)
-			for(int j=0;j<3;j++)
-			{
-				if (g.getBoard()[i][j]==' ')
-					pairs.add(new IndexPair(i,j));
-					
-			}
+		int empty=g.getEmptyBits();
+		for(int cell=0;cell<9;cell++)
+		{
+			if ((empty & (1<<cell))!=0)
+				pairs.add(new IndexPair(cell/3,cell%3));
+				
+		}
 		
 		IndexPair random=pairs.get(r.nextInt(pairs.size()));
 		
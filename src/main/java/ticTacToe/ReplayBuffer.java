@@ -0,0 +1,229 @@
+package ticTacToe;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A fixed-capacity experience replay buffer for {@link QLearningAgent}. It keeps the last {@link #capacity()}
+ * transitions (s, cell, reward, s', done), s and s' being {@link StateIndex} indexes, in primitive arrays used as a ring:
+ * once full, each new transition overwrites the oldest one. Nothing is allocated after construction.
+ *
+ * Transitions are drawn either uniformly, or, if the buffer is prioritized, with probability proportional to their
+ * priority, which the learner sets from the size of the transition's last TD error (see
+ * {@link #updatePriority(int, double)}). Priorities are kept in a sum tree, so sampling and updating a priority take
+ * O(log capacity). New transitions get the largest priority seen so far, so each one is likely to be replayed at least
+ * once.
+ *
+ * Prioritized sampling isn't corrected with importance sampling weights: with a q-table, the bias only shifts which
+ * q-values converge first.
+ *
+ */
+public class ReplayBuffer {
+
+	/**
+	 * The transitions, one per slot
+	 */
+	final int[] state;
+	final int[] cell;
+	final double[] reward;
+	final int[] next;
+	final boolean[] done;
+
+	/**
+	 * The number of slots in use, and the slot the next transition goes to
+	 */
+	int size;
+	int position;
+
+	/**
+	 * If true, transitions are sampled by priority
+	 */
+	final boolean prioritized;
+
+	/**
+	 * How strongly priorities follow the TD error: 0 is uniform, 1 is proportional to the TD error
+	 */
+	double priorityExponent=0.6;
+
+	/**
+	 * Added to every TD error, so that no transition gets a priority of 0
+	 */
+	double minPriority=0.01;
+
+	/**
+	 * The sum tree of priorities: node i holds the sum of nodes 2i and 2i+1, and the priority of slot j is at
+	 * {@code capacity+j}. Null if the buffer isn't prioritized.
+	 */
+	final double[] tree;
+	double maxPriority=1.0;
+
+	/**
+	 * A buffer sampled uniformly
+	 * @param capacity
+	 */
+	public ReplayBuffer(int capacity)
+	{
+		this(capacity, false);
+	}
+
+	/**
+	 * @param capacity the number of transitions kept
+	 * @param prioritized true to sample transitions by priority
+	 */
+	public ReplayBuffer(int capacity, boolean prioritized)
+	{
+		if (capacity<1)
+			throw new IllegalArgumentException("Capacity should be at least 1");
+
+		state=new int[capacity];
+		cell=new int[capacity];
+		reward=new double[capacity];
+		next=new int[capacity];
+		done=new boolean[capacity];
+		this.prioritized=prioritized;
+		tree=prioritized ? new double[2*capacity] : null;
+	}
+
+	/**
+	 * Stores a transition, overwriting the oldest one if the buffer is full
+	 * @return the slot it was stored in
+	 */
+	public int add(int s, int cell, double reward, int next, boolean done)
+	{
+		int slot=position;
+		this.state[slot]=s;
+		this.cell[slot]=cell;
+		this.reward[slot]=reward;
+		this.next[slot]=next;
+		this.done[slot]=done;
+		if (prioritized)
+			setPriority(slot, maxPriority);
+
+		position=(position+1)%state.length;
+		if (size<state.length)
+			size++;
+		return slot;
+	}
+
+	/**
+	 * @return the slot of a stored transition, drawn uniformly or by priority
+	 */
+	public int sample(Random random)
+	{
+		if (size==0)
+			throw new IllegalStateException("Sampling from an empty replay buffer");
+		if (!prioritized)
+			return random.nextInt(size);
+
+		// walk down from the root to the leaf whose range of the cumulative priorities holds u
+		int capacity=state.length;
+		double u=random.nextDouble()*tree[1];
+		int i=1;
+		while (i<capacity) {
+			if (u<tree[2*i])
+				i=2*i;
+			else {
+				u-=tree[2*i];
+				i=2*i+1;
+			}
+		}
+		int slot=i-capacity;
+		// rounding errors may walk past the used slots, which have priority 0
+		return slot<size ? slot : size-1;
+	}
+
+	/**
+	 * Sets the priority of {@code slot} from the TD error the learner just got for it. Does nothing if the buffer isn't
+	 * prioritized.
+	 */
+	public void updatePriority(int slot, double tdError)
+	{
+		if (!prioritized)
+			return;
+
+		double p=Math.pow(Math.abs(tdError)+minPriority, priorityExponent);
+		if (p>maxPriority)
+			maxPriority=p;
+		setPriority(slot, p);
+	}
+
+	private void setPriority(int slot, double p)
+	{
+		int i=state.length+slot;
+		tree[i]=p;
+		for (i/=2; i>=1; i/=2)
+			tree[i]=tree[2*i]+tree[2*i+1];
+	}
+
+	/**
+	 * @return the priority of {@code slot}, 0 if the buffer isn't prioritized
+	 */
+	public double priority(int slot)
+	{
+		return prioritized ? tree[state.length+slot] : 0.0;
+	}
+
+	/**
+	 * @return the sum of all the priorities, 0 if the buffer isn't prioritized
+	 */
+	public double totalPriority()
+	{
+		return prioritized ? tree[1] : 0.0;
+	}
+
+	/**
+	 * The transition stored in {@code slot}: its state, cell, reward, next state and whether it ended the game
+	 */
+	public int state(int slot)
+	{
+		return state[slot];
+	}
+
+	public int cell(int slot)
+	{
+		return cell[slot];
+	}
+
+	public double reward(int slot)
+	{
+		return reward[slot];
+	}
+
+	public int next(int slot)
+	{
+		return next[slot];
+	}
+
+	public boolean done(int slot)
+	{
+		return done[slot];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int capacity()
+	{
+		return state.length;
+	}
+
+	public boolean isPrioritized()
+	{
+		return prioritized;
+	}
+
+	/**
+	 * Empties the buffer
+	 */
+	public void clear()
+	{
+		size=0;
+		position=0;
+		maxPriority=1.0;
+		if (prioritized)
+			Arrays.fill(tree, 0.0);
+	}
+
+}
@@ -0,0 +1,188 @@
+package ticTacToe;
+
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An exact solver for the Tic-Tac-Toe MDP by backward induction (retrograde analysis).
+ *
+ * Every move adds a stone to the board, so the states form a DAG layered by the number of stones, and the successors of a
+ * state always have more stones than it. Processing the layers from the full board back to the empty one, every state's
+ * successors have already been solved when we get to it, so a single Bellman backup per state gives its exact value, and
+ * the maximising action is the optimal policy. No iterating to convergence is needed.
+ *
+ * The states of a layer don't depend on each other, so each layer is solved in parallel.
+ *
+ * This computes the same values (and so the same {@link Policy}) that {@link ValueIterationAgent} and
+ * {@link PolicyIterationAgent} converge to.
+ *
+ */
+public class RetrogradeAgent extends Agent {
+
+	/**
+	 * the discount factor
+	 */
+	double discount=0.9;
+
+	/**
+	 * the MDP model
+	 */
+	TTTMDP mdp;
+
+	/**
+	 * The compiled form of {@link #mdp}
+	 */
+	CompiledMDP model;
+
+	/**
+	 * The exact value of every state, and the optimal action id (-1 where the agent has no move), indexed by {@link StateIndex}.
+	 */
+	double[] values;
+	int[] actions;
+
+	/**
+	 * The number of threads each layer is solved with
+	 */
+	int parallelism=Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Layers are split into fork-join tasks of at most this many states
+	 */
+	static final int LAYER_CHUNK=256;
+
+	/**
+	 * how long the last call to {@link #train()} took, in milliseconds
+	 */
+	double solveTime;
+
+
+	/**
+	 * Solves the default MDP, see {@link TTTMDP}, with a discount factor of 0.9
+	 */
+	public RetrogradeAgent()
+	{
+		this(0.9);
+	}
+
+	public RetrogradeAgent(double discountFactor)
+	{
+		this(discountFactor, new TTTMDP());
+	}
+
+	/**
+	 * Use this constructor to set the various parameters of the Tic-Tac-Toe MDP
+	 * @param discountFactor
+	 * @param winningReward
+	 * @param losingReward
+	 * @param livingReward
+	 * @param drawReward
+	 */
+	public RetrogradeAgent(double discountFactor, double winningReward, double losingReward, double livingReward, double drawReward)
+	{
+		this(discountFactor, new TTTMDP(winningReward, losingReward, livingReward, drawReward));
+	}
+
+	public RetrogradeAgent(double discountFactor, TTTMDP mdp)
+	{
+		super();
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		train();
+	}
+
+	/**
+	 * Solves {@link #mdp} layer by layer, from the full board back to the empty one, and sets the agent's policy.
+	 */
+	public void train()
+	{
+		long start=System.nanoTime();
+		if (model==null)
+			model=mdp.compile();
+
+		StateIndex index=StateIndex.get();
+		values=new double[model.numStates()];
+		actions=new int[model.numStates()];
+
+		ForkJoinPool pool=new ForkJoinPool(parallelism);
+		try {
+			for (int stones=9; stones>=0; stones--)
+				pool.invoke(new LayerTask(index.layerStart(stones), index.layerStart(stones+1)));
+		} finally {
+			pool.shutdown();
+		}
+
+		this.policy=model.toPolicy(actions);
+		solveTime=(System.nanoTime()-start)/1e6;
+	}
+
+	/**
+	 * Solves states {@code from} to {@code to-1}, whose successors must all have been solved already.
+	 */
+	private void solve(int from, int to)
+	{
+		for (int s=from; s<to; s++) {
+			// terminal states, and states where it's not the planner's turn, have no actions: value 0
+			int best=model.greedyAction(s, values, discount);
+			actions[s]=best;
+			values[s]=best<0 ? 0.0 : model.qValue(best, values, discount);
+		}
+	}
+
+	/**
+	 * Solves a range of states of one layer, split in halves until ranges are at most {@link #LAYER_CHUNK} states long.
+	 */
+	private class LayerTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int from, to;
+
+		LayerTask(int from, int to)
+		{
+			this.from=from;
+			this.to=to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to-from<=LAYER_CHUNK) {
+				solve(from, to);
+				return;
+			}
+			int mid=(from+to)>>>1;
+			invokeAll(new LayerTask(from, mid), new LayerTask(mid, to));
+		}
+	}
+
+	/**
+	 * @return the optimal value of game {@code g}, or 0 if it's not a state of the MDP (e.g. it's terminal)
+	 */
+	public double getValue(Game g)
+	{
+		int s=StateIndex.get().indexOf(g);
+		return s<0 ? 0.0 : values[s];
+	}
+
+	/**
+	 * @return how long the last solve took, in milliseconds
+	 */
+	public double getSolveTime()
+	{
+		return solveTime;
+	}
+
+	public static void main(String a[]) throws IllegalMoveException
+	{
+		//Test method to play the agent against a human agent.
+		RetrogradeAgent agent=new RetrogradeAgent();
+		System.out.println("Solved in "+agent.getSolveTime()+"ms");
+		HumanAgent d=new HumanAgent();
+
+		Game g=new Game(agent, d, d);
+		g.playOut();
+
+	}
+
+}
@@ -0,0 +1,288 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * A dense numbering of every game state that can be reached from an empty
+ * board, with either X or O starting. Only these states (10956 of them, as
+ * opposed to the 59049 possible values of {@link Game#hashCode()}) get an
+ * index, so value functions, policies and q-tables can be stored in flat arrays
+ * of size {@link #size()} instead of maps keyed by {@link Game}s.
+ *
+ * Indices are handed out breadth first, so states are ordered by the number of
+ * stones on the board: all states with {@code k} stones lie in
+ * {@code [layerStart(k), layerStart(k+1))}.
+ *
+ * There is only ever one index; use {@link #get()} to obtain it. It is built on
+ * first use.
+ *
+ */
+public class StateIndex {
+
+	/**
+	 * the number of possible game hashes, see {@link Game#hashCode()}
+	 */
+	public static final int NUM_HASHES = 59049;
+
+	/**
+	 * index -> game hash
+	 */
+	final int[] hashes;
+
+	/**
+	 * game hash -> index, or -1 if the game is not reachable
+	 */
+	final int[] indexOfHash = new int[NUM_HASHES];
+
+	/**
+	 * index -> X and O bitboards, see {@link Game#getXBits()}
+	 */
+	final int[] xBits;
+	final int[] oBits;
+
+	/**
+	 * index -> one of {@link Game#ONGOING}, {@link Game#X_WON},
+	 * {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	final byte[] status;
+
+	/**
+	 * states with k stones on the board have indices layerStart[k] (inclusive)
+	 * to layerStart[k+1] (exclusive)
+	 */
+	final int[] layerStart = new int[11];
+
+	/**
+	 * index -> index of its canonical form (see {@link Game#canonical()}), and
+	 * the symmetry that maps the state onto it
+	 */
+	final int[] canonical;
+	final byte[] canonicalTransform;
+
+	/**
+	 * The successor table: next[9*index+cell] is the index of the state reached
+	 * when the player to move in state {@code index} plays {@code cell}, or -1
+	 * if the cell is taken or the state is terminal.
+	 */
+	final int[] next;
+
+	private static class Holder {
+		static final StateIndex INSTANCE = new StateIndex();
+	}
+
+	/**
+	 * @return the state index, building it if this is the first call
+	 */
+	public static StateIndex get() {
+		return Holder.INSTANCE;
+	}
+
+	private StateIndex() {
+		Arrays.fill(indexOfHash, -1);
+
+		int[] h = new int[NUM_HASHES];
+		int n = 0;
+
+		// layer 0: the empty board with X to move (hash 1) or O to move
+		// (hash 2)
+		h[n] = 1;
+		indexOfHash[1] = n++;
+		h[n] = 2;
+		indexOfHash[2] = n++;
+
+		int layer = 0;
+		int from = 0;
+		while (from < n) {
+			int to = n;
+			layerStart[layer] = from;
+			for (int s = from; s < to; s++) {
+				int hash = h[s];
+				int boardHash = hash - hash % 3;
+				boolean xToMove = hash % 3 == 1;
+				int x = decode(boardHash, 1);
+				int o = decode(boardHash, 2);
+				if (Game.evaluate(x, o) != Game.ONGOING)
+					continue;
+
+				int empty = ~(x | o) & Game.FULL_BOARD;
+				for (int cell = 0; cell < 9; cell++) {
+					if ((empty & (1 << cell)) == 0)
+						continue;
+
+					int next = boardHash
+							+ (xToMove ? 1 : 2) * Game.CELL_WEIGHT[cell]
+							+ (xToMove ? 2 : 1);
+					if (indexOfHash[next] < 0) {
+						h[n] = next;
+						indexOfHash[next] = n++;
+					}
+				}
+			}
+			from = to;
+			layer++;
+		}
+		for (int k = layer; k < layerStart.length; k++)
+			layerStart[k] = n;
+
+		hashes = Arrays.copyOf(h, n);
+		xBits = new int[n];
+		oBits = new int[n];
+		status = new byte[n];
+		canonical = new int[n];
+		canonicalTransform = new byte[n];
+		for (int s = 0; s < n; s++) {
+			int boardHash = hashes[s] - hashes[s] % 3;
+			xBits[s] = decode(boardHash, 1);
+			oBits[s] = decode(boardHash, 2);
+			status[s] = (byte) Game.evaluate(xBits[s], oBits[s]);
+
+			// symmetries preserve reachability, so the canonical form is
+			// indexed too
+			int t = Game.canonicalTransform(xBits[s], oBits[s]);
+			int x = Game.transformBits(xBits[s], t);
+			int o = Game.transformBits(oBits[s], t);
+			canonical[s] = indexOfHash[Game.boardHash(x, o) + hashes[s] % 3];
+			canonicalTransform[s] = (byte) t;
+		}
+
+		next = new int[9 * n];
+		Arrays.fill(next, -1);
+		for (int s = 0; s < n; s++) {
+			if (status[s] != Game.ONGOING)
+				continue;
+
+			int turn = hashes[s] % 3;
+			int boardHash = hashes[s] - turn;
+			int empty = ~(xBits[s] | oBits[s]) & Game.FULL_BOARD;
+			for (int cell = 0; cell < 9; cell++)
+				if ((empty & (1 << cell)) != 0)
+					next[9 * s + cell] = indexOfHash[boardHash
+							+ turn * Game.CELL_WEIGHT[cell] + 3 - turn];
+		}
+	}
+
+	/**
+	 * @return the mask of cells whose base 3 digit in {@code boardHash} equals
+	 *         {@code digit}
+	 */
+	private static int decode(int boardHash, int digit) {
+		int mask = 0;
+		for (int cell = 0; cell < 9; cell++)
+			if ((boardHash / Game.CELL_WEIGHT[cell]) % 3 == digit)
+				mask |= 1 << cell;
+		return mask;
+	}
+
+	/**
+	 * @return the number of indexed states
+	 */
+	public int size() {
+		return hashes.length;
+	}
+
+	/**
+	 * @return the index of game {@code g}, or -1 if it can't be reached from an
+	 *         empty board
+	 */
+	public int indexOf(Game g) {
+		return indexOfHash[g.hashCode()];
+	}
+
+	/**
+	 * @return the index of the game with hash {@code hash}, or -1 if it can't
+	 *         be reached from an empty board
+	 */
+	public int indexOfHash(int hash) {
+		return indexOfHash[hash];
+	}
+
+	/**
+	 * @return the {@link Game#hashCode()} of the state with index {@code index}
+	 */
+	public int hashOf(int index) {
+		return hashes[index];
+	}
+
+	/**
+	 * @return a new, evaluated, Game for the state with index {@code index}
+	 */
+	public Game game(int index) {
+		Game g = Game.inverseHash(hashes[index]);
+		g.state = status[index];
+		return g;
+	}
+
+	public int xBits(int index) {
+		return xBits[index];
+	}
+
+	public int oBits(int index) {
+		return oBits[index];
+	}
+
+	/**
+	 * @return 'X' or 'O'
+	 */
+	public char whoseTurn(int index) {
+		return hashes[index] % 3 == 1 ? 'X' : 'O';
+	}
+
+	/**
+	 * @return the game state of {@code index}: {@link Game#ONGOING},
+	 *         {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int status(int index) {
+		return status[index];
+	}
+
+	public boolean isTerminal(int index) {
+		return status[index] != Game.ONGOING;
+	}
+
+	/**
+	 * @return the index of the state reached by playing {@code cell} (3*x+y) in
+	 *         state {@code index}, or -1 if that isn't a legal move
+	 */
+	public int successor(int index, int cell) {
+		return next[9 * index + cell];
+	}
+
+	/**
+	 * @return the mask of cells the player to move can play in state
+	 *         {@code index}; 0 for terminal states
+	 */
+	public int legalCells(int index) {
+		if (status[index] != Game.ONGOING)
+			return 0;
+		return ~(xBits[index] | oBits[index]) & Game.FULL_BOARD;
+	}
+
+	/**
+	 * @return the index of the canonical form of state {@code index}
+	 */
+	public int canonical(int index) {
+		return canonical[index];
+	}
+
+	/**
+	 * @return the symmetry mapping state {@code index} onto its canonical form,
+	 *         see {@link Game#canonicalTransform()}
+	 */
+	public int canonicalTransform(int index) {
+		return canonicalTransform[index];
+	}
+
+	public boolean isCanonical(int index) {
+		return canonical[index] == index;
+	}
+
+	/**
+	 * @return the first index of the states with {@code stones} stones on the
+	 *         board. The states of the last layer end at
+	 *         {@code layerStart(10)}, which equals {@link #size()}.
+	 */
+	public int layerStart(int stones) {
+		return layerStart[stones];
+	}
+
+}
@@ -0,0 +1,31 @@
+package ticTacToe;
+
+
+import java.util.HashMap;
+
+/**
+ * A policy that only stores moves for canonical games (see {@link Game#canonical()}). To get a move for any other game,
+ * it looks up the move for that game's canonical form and maps it back through the inverse of the canonicalising
+ * rotation/reflection.
+ *
+ */
+public class SymmetricPolicy extends Policy {
+
+	/**
+	 * @param policy a map from canonical games to moves
+	 */
+	public SymmetricPolicy(HashMap<Game, Move> policy) {
+		super(policy);
+	}
+
+	@Override
+	public Move getMove(Game g) {
+		int t = g.canonicalTransform();
+		Move m = super.getMove(t == 0 ? g : g.transform(t));
+		if (m == null || t == 0)
+			return m;
+
+		return Game.transform(m, Game.inverseTransform(t));
+	}
+
+}
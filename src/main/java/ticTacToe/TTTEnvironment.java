@@ -10,6 +10,12 @@ import java.util.List;
  * whereas the RL agent (e.g. {@link QLearningAgent}) interacting with this environment always plays as 'X'. The key method to be used from this class
  * is the {@link TTTEnvironment#executeMove} method which takes a move (from X) and returns an {@link Outcome} object containing reward received as well
  * as the target state.
+ * 
+ * The environment is reused across steps and episodes: {@link #reset()} clears the same {@link Game}, and the 
+ * {@link Outcome} returned by {@link TTTEnvironment#executeMove}, with its source game, is overwritten by the next call.
+ * Its target game is the environment's own game, which every step and {@link #reset()} change.
+ * Learners that work with {@link StateIndex} indexes can use {@link #step(int)}, {@link #getSourceState()} and 
+ * {@link #getTargetState()} instead, which don't allocate anything for X's move.
  * @author ae187
  *
  */
@@ -27,6 +33,25 @@ public class TTTEnvironment {
 	double livingReward=-1.00;
 	double drawReward=0.0;
 	
+	final StateIndex index=StateIndex.get();
+	
+	/**
+	 * Buffers reused by every step: the game before X's move, and the outcome handed out by {@link #executeMove}
+	 */
+	private final Game prev;
+	private final Outcome outcome;
+	
+	/**
+	 * X's move in every cell, so {@link #step(int)} doesn't allocate moves
+	 */
+	private final Move[] xMoves=new Move[9];
+	
+	/**
+	 * The state indexes before and after the last step
+	 */
+	int source;
+	int target;
+	
 	
 	/**
 	 * By default, the environment contains an opponent that plays randomly, i.e. a {@link RandomAgent}; and uses all the
@@ -34,17 +59,22 @@ public class TTTEnvironment {
 	 */
 	public TTTEnvironment()
 	{
-		game=new Game(new Agent(), new RandomAgent());
+		this(new RandomAgent());
 	}
 	
 	public TTTEnvironment(Agent opponent)
 	{
 		game=new Game(new Agent(), opponent);
+		prev=game.clone();
+		outcome=new Outcome(prev, null, 0.0, game);
+		for (int cell=0; cell<9; cell++)
+			xMoves[cell]=new Move('X', cell/3, cell%3);
+		source=target=index.indexOf(game);
 	}
 	
 	public TTTEnvironment(Agent opponent, double winReward, double loseReward, double livingReward, double drawReward)
 	{
-		game=new Game(new Agent(), opponent);
+		this(opponent);
 		this.winReward=winReward;
 		this.loseReward=loseReward;
 		this.livingReward=livingReward;
@@ -71,6 +101,10 @@ public class TTTEnvironment {
 	 * Performs action/move {@code m} and returns an environment outcome {@code o}. Note that the outcome returned includes
 	 * the opponent's move, i.e. it is the game state AFTER the opponent has also played. The only exception to this is 
 	 * when our agent's move leads to a terminal state (winning, losing or draw). 
+	 * 
+	 * The outcome returned and its source game are reused by the next call, and its target game is
+	 * {@link #getCurrentGameState()}, which the next call and {@link #reset()} change. Copy the games (e.g. with
+	 * {@link Game#Game(Game)}) to keep them.
 	 * @param m
 	 * @return the environment outcome after playing move {@code m}. Null if we the move is illegal or if the environment is in a terminal 
 	 * state.
@@ -92,42 +126,92 @@ public class TTTEnvironment {
 			return null;
 		}
 		
-		Game prev=this.game.clone();
+		prev.copyFrom(game);
+		outcome.s=prev;
+		outcome.move=m;
+		outcome.localReward=play(m);
+		outcome.sPrime=game;
+		return outcome;
 		
+	}
+	
+	/**
+	 * Plays X in {@code cell} (3*x+y), then the opponent's reply unless the game is over.
+	 * @param cell
+	 * @return the reward received. The states before and after are then given by {@link #getSourceState()} and 
+	 * {@link #getTargetState()}.
+	 */
+	public double step(int cell) throws IllegalMoveException
+	{
+		if (cell<0 || cell>8 || !game.isLegal(xMoves[cell]))
+			throw new IllegalMoveException("Illegal Move: cell "+cell+" on:"+game);
+		else if (game.isTerminal())
+			throw new IllegalMoveException("Executing move in terminal state");
+		
+		return play(xMoves[cell]);
+	}
+	
+	/**
+	 * Plays X's legal move {@code m} and the opponent's reply
+	 * @return the reward received
+	 */
+	private double play(Move m) throws IllegalMoveException
+	{
+		source=index.indexOf(game);
 		game.executeMove(m);
 		
+		double reward;
 		if (game.getState()==Game.X_WON)
 		{
-			return new Outcome(prev, m, this.winReward, game);
+			reward=this.winReward;
 		}
 		else if (game.getState()==Game.DRAW)
 		{
 			//O couln't have won by X's move.
-			return new Outcome(prev, m, this.drawReward, game);
-		}
-		
-		//If we are here, the game is ongoing. So now it's the opponent's turn to play.
-		Move oMove=game.o.getMove(game);
-		if (!game.isLegal(oMove))
-			throw new IllegalMoveException("Illegal Move:"+m+" on:"+game);
-		
-		
-		game.executeMove(oMove);
-		if (game.getState()==Game.O_WON)
-		{
-			return new Outcome(prev, m, this.loseReward, game);
+			reward=this.drawReward;
 		}
-		else if (game.getState()==Game.DRAW)
+		else
 		{
-			//O couln't have won by X's move.
-			return new Outcome(prev, m, this.drawReward, game);
+			//If we are here, the game is ongoing. So now it's the opponent's turn to play.
+			Move oMove=game.o.getMove(game);
+			if (!game.isLegal(oMove))
+				throw new IllegalMoveException("Illegal Move:"+oMove+" on:"+game);
+			
+			game.executeMove(oMove);
+			if (game.getState()==Game.O_WON)
+				reward=this.loseReward;
+			else if (game.getState()==Game.DRAW)
+				reward=this.drawReward;
+			else
+				reward=this.livingReward;
 		}
 		
-		
-		
-		
-		return new Outcome(prev,m,this.livingReward,game);
-		
+		target=index.indexOf(game);
+		return reward;
+	}
+	
+	/**
+	 * @return the {@link StateIndex} index of the current game
+	 */
+	public int getState()
+	{
+		return index.indexOf(game);
+	}
+	
+	/**
+	 * @return the {@link StateIndex} index of the game before the last step
+	 */
+	public int getSourceState()
+	{
+		return source;
+	}
+	
+	/**
+	 * @return the {@link StateIndex} index of the game after the last step, including the opponent's reply
+	 */
+	public int getTargetState()
+	{
+		return target;
 	}
 	
 	public boolean isTerminal()
@@ -137,11 +221,13 @@ public class TTTEnvironment {
 	
 	
 	/**
-	 * Resets current game state to a new game state (empty board)
+	 * Resets current game state to a new game state (empty board), keeping the same opponent. The same {@link Game}
+	 * object is reused.
 	 */
 	public void reset()
 	{
-		this.game=new Game(new Agent(), new RandomAgent());
+		game.restart(game.x);
+		source=target=index.indexOf(game);
 	}
 	
 	
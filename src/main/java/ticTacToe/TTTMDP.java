@@ -2,7 +2,9 @@ package ticTacToe;
 
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class specifies a full MDP for the Tic Tac Toe game, i.e. the Transition Function, T, and the Reward Function R as per your lectures.
@@ -14,7 +16,10 @@ import java.util.List;
  * Note: this is only used for offline, planning methods such as Value Iteration and Policy Iteration, and, crucially, NOT in Reinforcement Learning 
  * (e.g. Q-learning) where you should't assume access to such a model.
  * 
- * Note: This class assumes that the Value/Policy Iteration agents always play as 'X' (never 'O') - as does the {@link ValueIterationAgent} class.
+ * Transitions are always generated from the point of view of the player making the move. Which states the planning agent 
+ * has to choose a move in (and so which ones get compiled, see {@link #compile()}) is set by {@link #setPlanner(char)}: 
+ * X's (the default), O's, or both, in which case X-to-move and O-to-move states are solved together, in one pass over 
+ * one compiled model.
  * 
  * @author ae187
  */
@@ -26,24 +31,91 @@ public class TTTMDP {
 	double livingReward=-1.00;
 	double drawReward=0.0;
 	
-	public TTTMDP() {
+	/**
+	 * How the opponent is assumed to reply to the planning agent's moves. Uniformly random by default.
+	 */
+	final OpponentModel opponent;
+	
+	/**
+	 * Planner value for solving X's and O's states together, see {@link #setPlanner(char)}
+	 */
+	public static final char BOTH_SIDES='B';
+	
+	/**
+	 * The side the planning agent plays: 'X', 'O' or {@link #BOTH_SIDES}
+	 */
+	char planner='X';
 	
+	/**
+	 * Optional cache of {@link #generateTransitions} results, keyed by {@code 9*hash+cell} of the (game, move) pair. Null
+	 * unless {@link #enableTransitionCache(int)} has been called.
+	 */
+	private TransitionCache cache;
+	
+	public TTTMDP() {
+		this(OpponentModel.uniform());
 		
 	}
 
 	public TTTMDP(double win, double lose, double live, double draw) {
+		this(OpponentModel.uniform(), win, lose, live, draw);
+	}
+	
+	/**
+	 * An MDP with the default rewards in which the opponent plays according to {@code opponent}
+	 * @param opponent
+	 */
+	public TTTMDP(OpponentModel opponent) {
+		this.opponent=opponent;
+	}
+	
+	public TTTMDP(OpponentModel opponent, double win, double lose, double live, double draw) {
+		this(opponent);
 		this.winReward=win;
 		this.loseReward=lose;
 		this.livingReward=live;
 		this.drawReward=draw;
 	}
 	
+	/**
+	 * @return the model of the opponent this MDP's transitions are generated from
+	 */
+	public OpponentModel getOpponent()
+	{
+		return opponent;
+	}
+	
+	/**
+	 * Sets the side the planning agent plays: 'X', 'O', or {@link #BOTH_SIDES} to plan for whoever is to move. With 
+	 * {@link #BOTH_SIDES} the values of X-to-move states are X's and those of O-to-move states are O's; the two sets of 
+	 * states never lead to each other, so one solver run over the model gives both agents. Takes effect the next time 
+	 * the MDP is compiled.
+	 * @param planner
+	 */
+	public void setPlanner(char planner)
+	{
+		if (planner!='X' && planner!='O' && planner!=BOTH_SIDES)
+			throw new IllegalArgumentException("The planner should be 'X', 'O' or BOTH_SIDES");
+		
+		this.planner=planner;
+	}
+	
+	public char getPlanner()
+	{
+		return planner;
+	}
+	
 	
 	/**
 	 * Generates a list of TransitionProb objects containing game outcomes (source game, move, reward, target game) tuples paired with their
 	 * probabilities. 
-	 * This essentially gives you a uniform probability distribution over all possible resulting game states and rewards when making move {@code m} 
-	 * in game {@code g}. This is implemented for you to use in your Value Iteration and Policy Iteration implementations. 
+	 * This essentially gives you a probability distribution over all possible resulting game states and rewards when making move {@code m} 
+	 * in game {@code g}, the opponent's replies being weighted by its {@link OpponentModel} (uniform unless given to the constructor).
+	 * Replies the opponent never plays are left out. Rewards are those of the player making move {@code m}. This is implemented for you to use in your Value Iteration and Policy Iteration implementations. 
+	 * 
+	 * A new list, with new {@link Game}s, is returned on every call, so callers may modify what they get, even if it 
+	 * comes from the transition cache (see {@link #enableTransitionCache(int)}). Solvers should use {@link #compile()}, 
+	 * which calls this once per (state, move) pair, rather than calling it in every sweep.
 	 * @param g
 	 * @param m
 	 * @return
@@ -53,76 +125,88 @@ public class TTTMDP {
 		if (g.whoseTurn.getName()!=m.who.getName())
 			throw new IllegalArgumentException("It's not "+m.who.getName()+"'s turn in game. This shouldn't happen!");
 		
-		if (m.who.getName()=='O')
+		if (cache==null)
+			return computeTransitions(g, m);
+		
+		int key=9*g.hashCode()+3*m.x+m.y;
+		List<TransitionProb> cached;
+		synchronized (cache)
 		{
-			throw new IllegalStateException("Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
+			cached=cache.get(key);
+			if (cached!=null)
+				cache.hits++;
+			else
+				cache.misses++;
 		}
 		
+		if (cached==null)
+		{
+			// the cache keeps its own copy, so nothing a caller does to the result can reach it
+			cached=copy(computeTransitions(g, m));
+			synchronized (cache)
+			{
+				cache.put(key, cached);
+			}
+		}
+		return copy(cached);
+	}
+	
+	/**
+	 * Does the work for {@link #generateTransitions}, bypassing the cache. The move and the opponent's replies are 
+	 * played through the {@link StateIndex} successor table, with one index lookup for {@code g}.
+	 */
+	private List<TransitionProb> computeTransitions(Game g, Move m)
+	{
 		List<TransitionProb> result=new ArrayList<TransitionProb>();
-		//first simulate move m
+		StateIndex index=StateIndex.get();
+		int s=index.indexOf(g);
+		if (s<0)
+			throw new IllegalArgumentException("Game can't be reached from an empty board:"+g);
 		
-		Game intermediate=null;
-		try {
-			intermediate=g.simulateMove(m);
-		}
-		catch(IllegalMoveException e)
+		//first simulate move m
+		int cell=3*m.x+m.y;
+		int after=index.successor(s, cell);
+		if (after<0)
 		{
 			System.out.println("WARNING: illegal move "+m+" tried when generating transitions. Returning empty list.");
-			System.out.println(e.getMessage());
-			
 			return result;
 		}
+		Game intermediate=g.successor(cell, after);
 		
-		//first check if X has won.
-		if (intermediate.getState()==Game.X_WON)
-		{
-			//if we are here, X won the game. 
-			double reward=this.winReward;
-			Outcome o=new Outcome(g, m, reward, intermediate);
-			TransitionProb transProb=new TransitionProb(o, 1.0);
-			result.add(transProb);
-			return result;
-			
-		}//is it a draw?
-		else if (intermediate.getState()==Game.DRAW)
+		char mover=m.who.getName();
+		
+		//first check if the mover has won, or it is a draw.
+		if (intermediate.isTerminal())
 		{
-			double reward=this.drawReward;
+			double reward=reward(intermediate.getState(), mover);
 			Outcome o=new Outcome(g, m, reward, intermediate);
 			TransitionProb transProb=new TransitionProb(o, 1.0);
 			result.add(transProb);
 			return result;
 			
-			
 		}
 		
 		
-		//If we are here equal chance that the opponent will move into the available places.
-		//we generate simulate all these, and associate them with equal probability
+		//If we are here the opponent replies as its model says.
+		//we simulate all the replies it might play, and associate them with their probabilities
 		
-		List<Game> nextPossibleStates=intermediate.getAllSuccessorGames();
-		for(Game game: nextPossibleStates)
+		char opponentName=intermediate.whoseTurn.getName();
+		double[] probs=new double[9];
+		opponent.moveDistribution(intermediate.getXBits(), intermediate.getOBits(), opponentName, probs);
+		for (int reply=0; reply<9; reply++)
 		{
-			double reward;	
-			if(game.getState()==Game.O_WON)
-			{
-				reward=this.loseReward;
-				
-			}
-			else if (game.getState()==Game.DRAW)
-			{
-				reward=this.drawReward;
-				
-			}
-			else
-			{
-				//game is ongoing. 
-				reward=this.livingReward;
-			}
+			if (probs[reply]==0.0)
+				continue;
 			
-			Outcome o=new Outcome(g, m, reward, game);
-			double prob=(double)1/nextPossibleStates.size();
+			int next=index.successor(after, reply);
+			if (next<0)
+				throw new IllegalStateException("Opponent model gave a probability to an illegal move: "+reply+" on:"+intermediate);
+			Game game=intermediate.successor(reply, next);
 			
-			TransitionProb transProb=new TransitionProb(o, prob);
+			//the opponent may have won, drawn, or the game is ongoing
+			double reward=reward(game.getState(), mover);
+			Outcome o=new Outcome(g, m, reward, game);
+			TransitionProb transProb=new TransitionProb(o, probs[reply]);
 			result.add(transProb);
 			
 		}
@@ -142,6 +226,161 @@ public class TTTMDP {
 		return g.isTerminal();
 	}
 	
+	/**
+	 * @return a deep copy of {@code transitions}: new {@link TransitionProb}s, {@link Outcome}s, {@link Move}s and 
+	 * {@link Game}s
+	 */
+	private static List<TransitionProb> copy(List<TransitionProb> transitions)
+	{
+		List<TransitionProb> result=new ArrayList<TransitionProb>(transitions.size());
+		for (TransitionProb t : transitions)
+		{
+			Outcome o=t.outcome;
+			Move m=new Move(o.move.who, o.move.x, o.move.y);
+			result.add(new TransitionProb(new Outcome(new Game(o.s), m, o.localReward, new Game(o.sPrime)), t.prob));
+		}
+		return result;
+	}
+	
+	/**
+	 * Turns on memoisation of {@link #generateTransitions}: the distribution for a (game, move) pair is computed once and 
+	 * then served from a cache holding at most {@code maxEntries} (game, move) pairs, evicting the least recently used 
+	 * one when full. This is for callers that ask for the same transitions many times, e.g. for MDPs too large to 
+	 * {@link #compile()}; compiling calls {@link #generateTransitions} once per pair, so it gains nothing from the cache.
+	 * 
+	 * This clears any previous cache and its counters. 
+	 * @param maxEntries
+	 */
+	public void enableTransitionCache(int maxEntries)
+	{
+		if (maxEntries<1)
+			throw new IllegalArgumentException("Cache size should be positive");
+		
+		this.cache=new TransitionCache(maxEntries);
+	}
+	
+	/**
+	 * Turns the transition cache off and drops its contents.
+	 */
+	public void disableTransitionCache()
+	{
+		this.cache=null;
+	}
+	
+	/**
+	 * @return number of {@link #generateTransitions} calls served from the cache
+	 */
+	public long getCacheHits()
+	{
+		return cache==null ? 0 : cache.hits;
+	}
+	
+	/**
+	 * @return number of {@link #generateTransitions} calls that had to compute their result
+	 */
+	public long getCacheMisses()
+	{
+		return cache==null ? 0 : cache.misses;
+	}
+	
+	/**
+	 * @return number of entries dropped from the cache to make room for new ones
+	 */
+	public long getCacheEvictions()
+	{
+		return cache==null ? 0 : cache.evictions;
+	}
+	
+	/**
+	 * @return number of (game, move) pairs in the cache
+	 */
+	public int getCacheSize()
+	{
+		if (cache==null)
+			return 0;
+		
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+	
+	/**
+	 * An LRU map of transition lists, with hit/miss/eviction counters. Guarded by synchronising on itself.
+	 */
+	private static class TransitionCache extends LinkedHashMap<Integer, List<TransitionProb>>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		final int maxEntries;
+		long hits=0;
+		long misses=0;
+		long evictions=0;
+		
+		TransitionCache(int maxEntries)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries=maxEntries;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<TransitionProb>> eldest)
+		{
+			if (size()<=maxEntries)
+				return false;
+			
+			evictions++;
+			return true;
+		}
+	}
+	
+	/**
+	 * @return the reward the planning agent gets for a transition into a game whose state is {@code gameState} (one of 
+	 * {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}), when it plays as {@code planner}.
+	 */
+	public double reward(int gameState, char planner)
+	{
+		switch (gameState)
+		{
+		case Game.X_WON:
+			return planner=='X' ? winReward : loseReward;
+		case Game.O_WON:
+			return planner=='O' ? winReward : loseReward;
+		case Game.DRAW:
+			return drawReward;
+		default:
+			return livingReward;
+		}
+	}
+	
+	/**
+	 * @return true if the planning agent (see {@link #setPlanner(char)}) has to choose a move in state {@code s} of {@code index}
+	 */
+	boolean isDecisionState(StateIndex index, int s)
+	{
+		return !index.isTerminal(s) && (planner==BOTH_SIDES || index.whoseTurn(s)==planner);
+	}
+	
+	/**
+	 * Compiles this MDP into flat arrays over the {@link StateIndex}, see {@link CompiledMDP}. This calls 
+	 * {@link #generateTransitions} once per (state, move) pair; solvers then never need to call it again.
+	 * @return the compiled model
+	 */
+	public CompiledMDP compile()
+	{
+		return compile(false);
+	}
+	
+	/**
+	 * As {@link #compile()}, but if {@code symmetric} is true only canonical states (see {@link Game#canonical()}) are 
+	 * compiled. This is only exact if the opponent model treats symmetric boards alike, as {@link OpponentModel#uniform()} 
+	 * does; {@link OpponentModel#aggressive()} and {@link OpponentModel#defensive()} break ties by cell order, so don't.
+	 */
+	public CompiledMDP compile(boolean symmetric)
+	{
+		return new CompiledMDP(this, symmetric);
+	}
+	
 	public static void main(String args[]) throws IllegalMoveException
 	{
 		Game g=new Game();
@@ -1,9 +1,11 @@
 package ticTacToe;
 
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A Value Iteration Agent, only very partially implemented. The methods to implement are: 
@@ -36,6 +38,59 @@ public class ValueIterationAgent extends Agent {
 	 */
 	int k=50;
 	
+	/**
+	 * If true, only canonical games (see {@link Game#canonical()}) are stored in {@link #valueFunction}: all 8 
+	 * rotations/reflections of a position share one value.
+	 */
+	boolean symmetric=false;
+	
+	/**
+	 * The compiled form of {@link #mdp}, built by {@link #initValues()}
+	 */
+	CompiledMDP model;
+	
+	/**
+	 * The value of every state, indexed by {@link StateIndex}; {@link #valueFunction} holds the same values keyed by 
+	 * {@link Game}s.
+	 */
+	double[] values;
+	
+	/**
+	 * The number of threads each sweep of {@link #iterate()} is split across. 1 runs the sweeps on the calling thread.
+	 */
+	int parallelism=1;
+	
+	/**
+	 * If positive, {@link #iterate()} stops as soon as the largest change of any state's value in a sweep (the Bellman 
+	 * residual) drops below this, and {@link #k} is only an upper bound on the number of sweeps. If 0, exactly {@link #k}
+	 * sweeps are done.
+	 */
+	double epsilon=0.0;
+	
+	/**
+	 * If true, sweeps are done in place (Gauss-Seidel): a single value array is updated, and states later in a sweep 
+	 * already see the new values of states updated earlier in it. Sweeps go from the fullest boards back to the empty 
+	 * one, so new values propagate towards the start of the game within a single sweep. In-place sweeps always run on the calling thread, 
+	 * whatever {@link #parallelism} is set to.
+	 */
+	boolean inPlace=false;
+	
+	/**
+	 * The wall time, in milliseconds, of each sweep of the last call to {@link #iterate()}
+	 */
+	double[] sweepTimes=new double[0];
+	
+	/**
+	 * The number of sweeps done by, and the Bellman residual of the last sweep of, the last call to {@link #iterate()}
+	 */
+	int sweeps=0;
+	double residual=Double.POSITIVE_INFINITY;
+	
+	/**
+	 * Sweeps are split into fork-join tasks of at most this many states
+	 */
+	static final int SWEEP_CHUNK=256;
+	
 	
 	/**
 	 * This constructor trains the agent offline first and sets its policy
@@ -68,16 +123,122 @@ public class ValueIterationAgent extends Agent {
 	}
 	
 	/**
-	 * Initialises the {@link ValueIterationAgent#valueFunction} map, and sets the initial value of all states to 0 
-	 * (V0 from the lectures). Uses {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do this. 
+	 * Trains the agent, storing and updating only canonical states if {@code symmetric} is true.
+	 * @param discountFactor
+	 * @param symmetric
+	 */
+	public ValueIterationAgent(double discountFactor, boolean symmetric) {
+		
+		this.discount=discountFactor;
+		this.symmetric=symmetric;
+		mdp=new TTTMDP();
+		initValues();
+		train();
+	}
+	
+	/**
+	 * @return an agent trained with each value iteration sweep split across {@code parallelism} threads
+	 * @param discountFactor
+	 * @param parallelism
+	 */
+	public static ValueIterationAgent parallel(double discountFactor, int parallelism) {
+		
+		ValueIterationAgent agent=new ValueIterationAgent((Policy) null);
+		agent.discount=discountFactor;
+		agent.mdp=new TTTMDP();
+		agent.setParallelism(parallelism);
+		agent.initValues();
+		agent.train();
+		return agent;
+	}
+	
+	/**
+	 * Sets the number of threads used by {@link #iterate()}; takes effect the next time the agent is trained.
+	 * @param parallelism 1 or more.
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism<1)
+			throw new IllegalArgumentException("Parallelism should be at least 1");
+		
+		this.parallelism=parallelism;
+	}
+	
+	/**
+	 * Trains the agent, sweeping until the Bellman residual is below {@code epsilon} (at most {@link #k} sweeps), in place 
+	 * if {@code inPlace} is true.
+	 * @param discountFactor
+	 * @param epsilon
+	 * @param inPlace
+	 */
+	public ValueIterationAgent(double discountFactor, double epsilon, boolean inPlace) {
+		
+		this.discount=discountFactor;
+		mdp=new TTTMDP();
+		setConvergence(epsilon);
+		setInPlace(inPlace);
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Makes {@link #iterate()} stop once the Bellman residual of a sweep is below {@code epsilon}; 0 turns this off. 
+	 * Takes effect the next time the agent is trained.
+	 * @param epsilon
+	 */
+	public void setConvergence(double epsilon)
+	{
+		if (epsilon<0)
+			throw new IllegalArgumentException("Epsilon should not be negative");
+		
+		this.epsilon=epsilon;
+	}
+	
+	/**
+	 * Switches between in-place (Gauss-Seidel) and double-buffered (Jacobi) sweeps; takes effect the next time the 
+	 * agent is trained.
+	 * @param inPlace
+	 */
+	public void setInPlace(boolean inPlace)
+	{
+		this.inPlace=inPlace;
+	}
+	
+	/**
+	 * @return the wall time in milliseconds of each sweep of the last run of {@link #iterate()}
+	 */
+	public double[] getSweepTimes()
+	{
+		return sweepTimes;
+	}
+	
+	/**
+	 * @return the number of sweeps done by the last run of {@link #iterate()}
+	 */
+	public int getSweeps()
+	{
+		return sweeps;
+	}
+	
+	/**
+	 * @return the largest change of a state value in the last sweep of the last run of {@link #iterate()}
+	 */
+	public double getResidual()
+	{
+		return residual;
+	}
+	
+	/**
+	 * Compiles the {@link #mdp} (see {@link TTTMDP#compile()}) and sets the initial value of all states to 0 
+	 * (V0 from the lectures). {@link ValueIterationAgent#valueFunction} is filled in from these values by 
+	 * {@link #iterate()}.
 	 * 
 	 */
 	public void initValues()
 	{
 		
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
-			this.valueFunction.put(g, 0.0);
+		model=mdp.compile(symmetric);
+		values=new double[model.numStates()];
 		
 		
 		
@@ -91,6 +252,20 @@ public class ValueIterationAgent extends Agent {
 		mdp=new TTTMDP(winReward, loseReward, livingReward, drawReward);
 	}
 	
+	/**
+	 * Trains the agent on {@code mdp}, e.g. one with an {@link OpponentModel} other than uniformly random, so that it 
+	 * learns the best response to that opponent.
+	 * @param discountFactor
+	 * @param mdp
+	 */
+	public ValueIterationAgent(double discountFactor, TTTMDP mdp)
+	{
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		initValues();
+		train();
+	}
+	
 	/**
 	 
 	
@@ -98,55 +273,108 @@ public class ValueIterationAgent extends Agent {
 	 * Performs {@link #k} value iteration steps. After running this method, the {@link ValueIterationAgent#valueFunction} map should contain
 	 * the (current) values of each reachable state. You should use the {@link TTTMDP} provided to do this.
 	 * 
+	 * The sweeps run over the compiled model ({@link #model}), with {@link #values} and a second array of the same size 
+	 * swapped after each sweep, so no transitions or maps are built inside the loop.
 	 *
 	 */
 	public void iterate()
 	{
-		for (int i = 0; i < k; i++) {
-			// new map to store updated values
-			Map<Game, Double> newValueFunction = new HashMap<>();
-			
-			for (Game state : valueFunction.keySet()) {
-				// if state is terminal, set its value to 0 and continue to next state
-				if (state.isTerminal()) {
-					newValueFunction.put(state, 0.0);
-					continue;
-				}
+		if (model==null)
+			initValues();
+		
+		int[] states=model.decisionStates();
+		// in place, values is read and written by the same sweep
+		double[] next=inPlace ? values : new double[values.length];
+		ForkJoinPool pool = parallelism > 1 && !inPlace ? new ForkJoinPool(parallelism) : null;
+		double[] times=new double[k];
+		sweeps=0;
+		residual=Double.POSITIVE_INFINITY;
+		try {
+			while (sweeps < k && residual >= epsilon) {
+				long start = System.nanoTime();
+				// terminal states (and states where it isn't the planner's turn) have no actions, so they keep the value 0
+				if (pool == null)
+					residual = sweep(states, 0, states.length, values, next);
+				else
+					residual = pool.invoke(new SweepTask(states, 0, states.length, values, next));
 				
-				// value initialised
-				double maxQValue = Double.NEGATIVE_INFINITY;
-
-				// compute values for all possible actions for the state
-				// get optimal value for state by the maximum of Q*(s,a) over all actions
-				for (Move action : state.getPossibleMoves()) {
-					double actionValue = 0.0;
-					
-					// get all possible transitions for this action
-		 			List<TransitionProb> transitions = mdp.generateTransitions(state, action);
-		 			
-		 			// get expected value of action for state, summing the expected rewards over all 
-		 			// possible next states
-					for (TransitionProb transition : transitions) {
-						Game nextState = transition.outcome.sPrime; // s'
-						double probability = transition.prob; // T(s,a,s')
-						double reward = transition.outcome.localReward; // R(s,a,s')
-
-						// sum expected rewards using Bellman's equation Q*(s,a)
-						actionValue += probability * (reward + discount * valueFunction.get(nextState));
-					}
-
-					// update value of action with max utility for the state
-					// V*(s) = maxQ*(s,a)
-					if (actionValue > maxQValue) {
-						maxQValue = actionValue;
-					}
-				}
-				// update the optimal action value for state in value function V*(s)
-	            newValueFunction.put(state, maxQValue); 
+				// swap the old and the updated value function
+				double[] tmp = values;
+				values = next;
+				next = tmp;
+				times[sweeps++] = (System.nanoTime() - start) / 1e6;
 			}
-			// replace old value function with updated one
-			valueFunction = newValueFunction;
+		} finally {
+			if (pool != null)
+				pool.shutdown();
 		}
+		sweepTimes=Arrays.copyOf(times, sweeps);
+		
+		valueFunction=model.toValueMap(values);
+	}
+	
+	/**
+	 * One value iteration update of {@code states[from]} to {@code states[to-1]}, reading values from {@code in}
+	 * and writing them to {@code out}. If they are the same array this is an in-place (Gauss-Seidel) update.
+	 * @return the largest change in value of the states updated
+	 */
+	private double sweep(int[] states, int from, int to, double[] in, double[] out)
+	{
+		double maxChange = 0.0;
+		// states are ordered by number of stones, so going backwards an in-place sweep mostly reads successors that it
+		// has already updated
+		for (int i = to - 1; i >= from; i--) {
+			int s = states[i];
+			double old = in[s];
+			// V*(s) = max over a of Q*(s,a), Q*(s,a) = sum over s' of T(s,a,s')[R(s,a,s') + discount * V(s')]
+			out[s] = model.backup(s, in, discount);
+			maxChange = Math.max(maxChange, Math.abs(out[s] - old));
+		}
+		return maxChange;
+	}
+	
+	/**
+	 * A sweep over a range of states, split in halves until ranges are at most {@link #SWEEP_CHUNK} states long. Each
+	 * task writes a disjoint part of the output array, so no synchronisation is needed. Returns the largest change in 
+	 * value over the range.
+	 */
+	private class SweepTask extends RecursiveTask<Double>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		final int[] states;
+		final int from, to;
+		final double[] in, out;
+		
+		SweepTask(int[] states, int from, int to, double[] in, double[] out)
+		{
+			this.states=states;
+			this.from=from;
+			this.to=to;
+			this.in=in;
+			this.out=out;
+		}
+		
+		@Override
+		protected Double compute()
+		{
+			if (to - from <= SWEEP_CHUNK)
+				return sweep(states, from, to, in, out);
+			
+			int mid = (from + to) >>> 1;
+			SweepTask left = new SweepTask(states, from, mid, in, out);
+			left.fork();
+			double right = new SweepTask(states, mid, to, in, out).compute();
+			return Math.max(left.join(), right);
+		}
+	}
+	
+	/**
+	 * @return the value of game {@code g} after training, 0 if it's not a state of the MDP
+	 */
+	public double getValue(Game g)
+	{
+		return model.value(values, g);
 	}
 	
 	/**This method should be run AFTER the train method to extract a policy according to {@link ValueIterationAgent#valueFunction}
@@ -157,51 +385,8 @@ public class ValueIterationAgent extends Agent {
 	 */
 	public Policy extractPolicy()
 	{
-		HashMap<Game, Move> policyMap = new HashMap<>();
-
-		// iterate over all states in the value function, which has been updated by the iterate() method
-		for (Game state : valueFunction.keySet()) {
-			// skip terminal states
-			if (state.isTerminal()) {
-				continue;
-			}
-			
-			// value initialised
-			double maxQValue = Double.NEGATIVE_INFINITY;
-			// optimal move for state
-			Move bestAction = null;
- 
-			// loop through all possible actions for current state
-			for (Move action : state.getPossibleMoves()) {
-				double actionValue = 0.0;
-
-				// get all possible transitions for the current action
-				List<TransitionProb> transitions = mdp.generateTransitions(state, action);
-				
-				// get expected value of action for state, summing the expected rewards over all 
-	 			// possible next states
-				for (TransitionProb transition : transitions) {
-					Game nextState = transition.outcome.sPrime; // s'
-					double probability = transition.prob; // T(s,a,s')
-					double reward = transition.outcome.localReward; // R(s,a,s')
-					
-					// Q*(s,a)
-					actionValue += probability * (reward + discount * valueFunction.get(nextState));
-				}
-
-				// update maximum action value and the optimal action for state
-				if (actionValue > maxQValue) {
-					// value updated
-					maxQValue = actionValue; 
-					bestAction = action; // argmax Q*(s,a)
-				}
-			}
-
-			// store best action for the current state in the policy map
-			policyMap.put(state, bestAction);
-		}
-		
-		return new Policy(policyMap);
+		// for every state: argmax over a of Q*(s,a) under the current values
+		return model.extractPolicy(values, discount);
 	}
 	
 	/**
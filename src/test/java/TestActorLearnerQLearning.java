@@ -0,0 +1,55 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import ticTacToe.ActorLearnerQLearningAgent;
+import ticTacToe.Agent;
+import ticTacToe.RandomAgent;
+
+public class TestActorLearnerQLearning {
+
+	/**
+	 * The agent's batch size and snapshot interval
+	 */
+	static final int BATCH_SIZE=64, SNAPSHOT_INTERVAL=4;
+
+	/**
+	 * The learner must learn from exactly the transitions the actors played, counted by their opponents, and publish a
+	 * snapshot every {@link #SNAPSHOT_INTERVAL} batches. Every actor sends its full batches and then one last, possibly
+	 * empty, batch.
+	 */
+	@Test
+	public void testLearnsEveryTransition() {
+		TestParallelQLearning.CornerAgents opponents=new TestParallelQLearning.CornerAgents();
+		ActorLearnerQLearningAgent agent=new ActorLearnerQLearningAgent(opponents, 0.1, 4000, 0.9, 4);
+
+		int episodes=0;
+		long transitions=0;
+		int batches=0;
+		for (TestParallelQLearning.CornerAgent opponent : opponents.handedOut) {
+			episodes+=opponent.episodes;
+			transitions+=opponent.transitions();
+			batches+=opponent.transitions()/BATCH_SIZE+1;
+		}
+		assertEquals(4000, episodes);
+		assertEquals(transitions, agent.getTransitions());
+		assertEquals(1+batches/SNAPSHOT_INTERVAL, agent.getSnapshots());
+		assertTrue(agent.getSnapshots()>1);
+	}
+
+	@Test
+	public void testPlaysLegally() {
+		ActorLearnerQLearningAgent agent=new ActorLearnerQLearningAgent(new Supplier<Agent>() {
+			public Agent get()
+			{
+				return new RandomAgent();
+			}
+		}, 0.1, 4000, 0.9, 4);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(50, results[0]+results[1]+results[2]);
+	}
+
+}
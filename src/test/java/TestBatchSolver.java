@@ -0,0 +1,40 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ticTacToe.BatchSolver;
+import ticTacToe.Game;
+import ticTacToe.Policy;
+import ticTacToe.RetrogradeAgent;
+
+public class TestBatchSolver {
+
+	/**
+	 * Every configuration of a batch should get the values and policy it gets when solved on its own.
+	 */
+	@Test
+	public void testSameAsSolvedOneByOne() {
+		List<BatchSolver.Config> configs=BatchSolver.grid(new double[] { 0.5, 0.9 }, new double[] { 10 },
+				new double[] { -10, -50 }, new double[] { -1, 0 }, new double[] { 0 });
+		List<BatchSolver.Result> results=new BatchSolver(2).solve(configs);
+		assertEquals(configs.size(), results.size());
+
+		for (int i=0; i<configs.size(); i++) {
+			BatchSolver.Config c=configs.get(i);
+			BatchSolver.Result r=results.get(i);
+			assertEquals(c, r.config);
+
+			RetrogradeAgent reference=new RetrogradeAgent(c.discount, c.winReward, c.loseReward, c.livingReward, c.drawReward);
+			Policy expected=reference.getPolicy();
+			Policy policy=r.getPolicy();
+			for (Game g: Game.generateAllValidGames('X')) {
+				assertEquals(reference.getValue(g), r.getValue(g), 1e-6);
+				if (!g.isTerminal())
+					assertEquals(expected.getMove(g), policy.getMove(g));
+			}
+		}
+	}
+
+}
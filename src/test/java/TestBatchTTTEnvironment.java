@@ -0,0 +1,105 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ticTacToe.BatchTTTEnvironment;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.OpponentModel;
+import ticTacToe.StateIndex;
+
+public class TestBatchTTTEnvironment {
+
+	/**
+	 * An opponent that always plays the first empty cell, so every lane's game is known in advance
+	 */
+	static final OpponentModel FIRST_EMPTY=new OpponentModel() {
+		public void moveDistribution(int xBits, int oBits, char mover, double[] probs)
+		{
+			int first=Integer.numberOfTrailingZeros(~(xBits|oBits)&Game.FULL_BOARD);
+			for (int cell=0; cell<9; cell++)
+				probs[cell]=cell==first ? 1.0 : 0.0;
+		}
+	};
+
+	/**
+	 * X's moves per step in three lanes. Against {@link #FIRST_EMPTY}, lane 0 wins at step 3 (0,3,6) and lane 1 loses
+	 * at step 3 (O completes 0,1,2); both then start again and play 4 and 8 on the new board. Lane 2 draws at step 5.
+	 */
+	static final int[][] MOVES={{0, 3, 1}, {3, 4, 3}, {6, 6, 4}, {4, 4, 6}, {8, 8, 8}};
+
+	@Test
+	public void testWinLossDrawAndAutoReset() throws IllegalMoveException {
+		StateIndex index=StateIndex.get();
+		int start=index.indexOfHash(1);
+		BatchTTTEnvironment env=new BatchTTTEnvironment(3, FIRST_EMPTY);
+
+		for (int step=0; step<MOVES.length; step++) {
+			env.step(MOVES[step]);
+			for (int lane=0; lane<3; lane++) {
+				boolean ends=(step==2 && lane<2) || (step==4 && lane==2);
+				assertEquals("step "+step+" lane "+lane, ends, env.dones()[lane]);
+				if (ends) {
+					assertEquals(start, env.states()[lane]);
+					assertTrue(index.isTerminal(env.nextStates()[lane]));
+				} else {
+					assertEquals(env.nextStates()[lane], env.states()[lane]);
+					assertEquals(-1.0, env.rewards()[lane], 0.0);
+					assertEquals(Game.ONGOING, index.status(env.nextStates()[lane]));
+				}
+			}
+
+			if (step==2) {
+				assertEquals(10.0, env.rewards()[0], 0.0);
+				assertEquals(Game.X_WON, index.status(env.nextStates()[0]));
+				assertEquals(-50.0, env.rewards()[1], 0.0);
+				assertEquals(Game.O_WON, index.status(env.nextStates()[1]));
+			}
+		}
+
+		assertEquals(0.0, env.rewards()[2], 0.0);
+		assertEquals(Game.DRAW, index.status(env.nextStates()[2]));
+		// the lanes that started again have X on 4 and 8 and O on 0 and 1
+		assertEquals(0x110, index.xBits(env.states()[0]));
+		assertEquals(0x003, index.oBits(env.states()[0]));
+		assertEquals(env.states()[0], env.states()[1]);
+	}
+
+	/**
+	 * A batch with one illegal move is rejected as a whole: no lane, before or after the bad one, is stepped
+	 */
+	@Test
+	public void testIllegalMoveStepsNoLane() throws IllegalMoveException {
+		BatchTTTEnvironment env=new BatchTTTEnvironment(3, FIRST_EMPTY);
+		env.step(new int[] {4, 4, 4});
+
+		int[][] bad={{5, 0, 5}, {5, 5, 4}, {5, 9, 5}, {-1, 5, 5}};
+		for (int[] cells : bad) {
+			int[] states=env.states().clone();
+			int[] nextStates=env.nextStates().clone();
+			double[] rewards=env.rewards().clone();
+			boolean[] dones=env.dones().clone();
+			try {
+				env.step(cells);
+				fail("Stepped with an illegal move");
+			} catch (IllegalMoveException e) {
+			}
+			assertTrue(Arrays.equals(states, env.states()));
+			assertTrue(Arrays.equals(nextStates, env.nextStates()));
+			assertTrue(Arrays.equals(rewards, env.rewards()));
+			assertTrue(Arrays.equals(dones, env.dones()));
+		}
+
+		env.step(new int[] {5, 5, 5});
+		for (int lane=0; lane<3; lane++) {
+			assertFalse(env.dones()[lane]);
+			assertTrue((env.legalCells(lane)&(1<<5))==0);
+		}
+	}
+
+}
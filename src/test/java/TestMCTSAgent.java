@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.AggressiveAgent;
+import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.MCTSAgent;
+import ticTacToe.Move;
+import ticTacToe.RandomAgent;
+
+public class TestMCTSAgent {
+	@Test
+	public void testDefensive() {
+		System.out.println("Against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new MCTSAgent(), new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	@Test
+	public void testAggressive() {
+		System.out.println("Against Aggressive Agent:");
+
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new MCTSAgent(), new AggressiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+
+	@Test
+	public void testRandom() {
+		System.out.println("Against Random Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new MCTSAgent(10000, 2), new RandomAgent(), 50);
+
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	/**
+	 * After its own move and the opponent's reply, the new position is a grandchild of the last root, so its subtree and
+	 * playouts should be kept. A position that isn't in the tree starts from scratch.
+	 */
+	@Test
+	public void testTreeReuse() throws IllegalMoveException {
+		MCTSAgent agent=new MCTSAgent(10000);
+		Game g=new Game();
+		Move first=agent.getMove(g);
+		assertEquals(0L, agent.getReusedPlayouts());
+		assertEquals(10000L, agent.getPlayouts());
+
+		// the same position again: the whole tree is reused
+		agent.getMove(g);
+		assertEquals(10000L, agent.getReusedPlayouts());
+
+		g.executeMove(first);
+		int reply=Integer.numberOfTrailingZeros(g.getEmptyBits());
+		g.executeMove('O', reply/3, reply%3);
+		agent.getMove(g);
+		assertTrue(agent.getReusedPlayouts()>0);
+		assertTrue(agent.getReusedPlayouts()<20000);
+
+		// the empty board isn't below the new root
+		agent.getMove(new Game());
+		assertEquals(0L, agent.getReusedPlayouts());
+	}
+
+	/**
+	 * With several threads, each runs its share of the playouts, the counts are added up, and the moves found are still
+	 * the winning one or the block.
+	 */
+	@Test
+	public void testRootParallel() throws IllegalMoveException {
+		MCTSAgent agent=new MCTSAgent(4002, 4);
+		try {
+			// X wins at (0,2)
+			Game win=new Game();
+			win.executeMove('X', 0, 0);
+			win.executeMove('O', 1, 0);
+			win.executeMove('X', 0, 1);
+			win.executeMove('O', 1, 1);
+			Move m=agent.getMove(win);
+			assertEquals(0, m.x);
+			assertEquals(2, m.y);
+			// 4 shares of 1001
+			assertEquals(4004L, agent.getPlayouts());
+
+			// O threatens the diagonal through (2,0), which X has to block
+			Game block=new Game();
+			block.executeMove('X', 0, 0);
+			block.executeMove('O', 1, 1);
+			block.executeMove('X', 2, 1);
+			block.executeMove('O', 0, 2);
+			m=agent.getMove(block);
+			assertEquals(2, m.x);
+			assertEquals(0, m.y);
+			assertEquals(4004L, agent.getPlayouts());
+		} finally {
+			agent.close();
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.AggressiveAgent;
+import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.NegamaxAgent;
+import ticTacToe.RandomAgent;
+
+public class TestNegamaxAgent {
+	@Test
+	public void testDefensive() {
+		System.out.println("Against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new NegamaxAgent(), new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	@Test
+	public void testAggressive() {
+		System.out.println("Against Aggressive Agent:");
+
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new NegamaxAgent(), new AggressiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+
+	@Test
+	public void testRandom() {
+		System.out.println("Against Random Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new NegamaxAgent(), new RandomAgent(), 50);
+
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	/**
+	 * Perfect play on both sides is always a draw
+	 */
+	@Test
+	public void testSelfPlay() {
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new NegamaxAgent(), new NegamaxAgent(), 5);
+		assertEquals(5, results[2]);
+	}
+
+	/**
+	 * Without a time limit the first move is searched to the end of the game
+	 */
+	@Test
+	public void testFullDepth() {
+		NegamaxAgent agent=new NegamaxAgent();
+		agent.getMove(new Game());
+		assertEquals(9, agent.getDepth());
+	}
+
+	/**
+	 * With a time limit every move should still be a sound move. The time limit is enough to search to the end, so the
+	 * cut-off itself is tested with node limits below.
+	 */
+	@Test
+	public void testTimeLimit() {
+		NegamaxAgent agent=new NegamaxAgent(5);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 20);
+		assertEquals(0, results[1]);
+	}
+
+	/**
+	 * A search cut off on the empty board should play the best move of the last completed depth. No line can be
+	 * completed within 4 moves, so every depth-limited score there is 0 and that move is the first one tried, the centre.
+	 */
+	@Test
+	public void testCutOffOnEmptyBoard() {
+		NegamaxAgent agent=new NegamaxAgent();
+		agent.setNodeLimit(50);
+		agent.clearTable();
+		Move m=agent.getMove(new Game());
+		assertTrue(agent.getDepth()>=1);
+		assertTrue(agent.getDepth()<9);
+		assertEquals(1, m.x);
+		assertEquals(1, m.y);
+	}
+
+	/**
+	 * X can win at (2,0), which comes after (0,2) in the move order. If depth 1 doesn't complete, the first legal move
+	 * in the move order is played; once it has, the win is.
+	 */
+	@Test
+	public void testCutOffFallback() throws IllegalMoveException {
+		Game g=new Game();
+		g.executeMove('X', 0, 0);
+		g.executeMove('O', 1, 1);
+		g.executeMove('X', 1, 0);
+		g.executeMove('O', 2, 2);
+
+		NegamaxAgent agent=new NegamaxAgent();
+		agent.setNodeLimit(1);
+		Move m=agent.getMove(g);
+		assertEquals(0, agent.getDepth());
+		assertEquals(0, m.x);
+		assertEquals(2, m.y);
+
+		agent.clearTable();
+		agent.setNodeLimit(10);
+		m=agent.getMove(g);
+		assertTrue(agent.getDepth()>=1);
+		assertTrue(agent.getDepth()<5);
+		assertEquals(2, m.x);
+		assertEquals(0, m.y);
+	}
+
+}
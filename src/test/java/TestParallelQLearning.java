@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import ticTacToe.Agent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.ParallelQLearningAgent;
+import ticTacToe.RandomAgent;
+
+public class TestParallelQLearning {
+
+	static final int[] CORNERS={0, 2, 6, 8};
+
+	/**
+	 * An opponent whose first stone goes on its own corner (the centre if X took it) and the rest at random; with a
+	 * corner of -1 all its stones go at random. It counts
+	 * what it played, so a test knows which states its episodes reached and how many transitions X made in them: X
+	 * moves first and fills the board, so an episode only ends on O's move when O wins.
+	 */
+	static class CornerAgent extends Agent {
+		final int corner;
+		final Random random;
+		int episodes, moves, wins;
+
+		CornerAgent(int corner)
+		{
+			this.corner=corner;
+			this.random=new Random(corner);
+		}
+
+		@Override
+		public Move getMove(Game g)
+		{
+			int empty=g.getEmptyBits();
+			int cell;
+			if (g.getOBits()==0)
+				episodes++;
+			if (g.getOBits()==0 && corner>=0)
+				cell=(empty&(1<<corner))!=0 ? corner : 4;
+			else {
+				cell=-1;
+				for (int skip=random.nextInt(Integer.bitCount(empty)); skip>=0; skip--) {
+					cell=Integer.numberOfTrailingZeros(empty);
+					empty&=empty-1;
+				}
+			}
+			Move m=new Move('O', cell/3, cell%3);
+			moves++;
+			try {
+				if (g.simulateMove(m).evaluateGameState()==Game.O_WON)
+					wins++;
+			} catch (IllegalMoveException e) {
+				throw new IllegalStateException(e);
+			}
+			return m;
+		}
+
+		/**
+		 * @return the transitions X made in the episodes played against this agent
+		 */
+		int transitions()
+		{
+			return moves+episodes-wins;
+		}
+	}
+
+	/**
+	 * Hands out a {@link CornerAgent} per corner, in order, and keeps them
+	 */
+	static class CornerAgents implements Supplier<Agent> {
+		final CornerAgent[] handedOut=new CornerAgent[CORNERS.length];
+		int next;
+
+		public Agent get()
+		{
+			return handedOut[next]=new CornerAgent(CORNERS[next++]);
+		}
+	}
+
+	/**
+	 * @return the game after X plays {@code x} and O replies on {@code o}
+	 */
+	static Game afterFirstMoves(int x, int o) throws IllegalMoveException
+	{
+		Game g=new Game();
+		g.executeMove('X', x/3, x%3);
+		g.executeMove('O', o/3, o%3);
+		return g;
+	}
+
+	/**
+	 * @return how many of X's moves from {@code g} have a q-value other than 0
+	 */
+	static int updated(ParallelQLearningAgent agent, Game g)
+	{
+		int n=0;
+		for (Move m : g.getPossibleMoves())
+			if (agent.getQValue(g, m)!=0.0)
+				n++;
+		return n;
+	}
+
+	/**
+	 * Each worker plays its own corner opponent, so only that worker reaches the states where O's first stone is on that
+	 * corner. The merged table must hold updates for all four corners, and none for an edge, where no opponent plays.
+	 */
+	@Test
+	public void testEveryWorkerUpdatesTheTable() throws IllegalMoveException {
+		CornerAgents opponents=new CornerAgents();
+		ParallelQLearningAgent agent=new ParallelQLearningAgent(opponents, 0.1, 4000, 0.9, CORNERS.length);
+
+		int episodes=0;
+		for (CornerAgent opponent : opponents.handedOut)
+			episodes+=opponent.episodes;
+		assertEquals(4000, episodes);
+
+		for (int o=0; o<9; o++) {
+			int n=0;
+			for (int x=0; x<9; x++)
+				if (x!=o)
+					n+=updated(agent, afterFirstMoves(x, o));
+			if (o==1 || o==3 || o==5 || o==7)
+				assertEquals("O's first stone on edge "+o, 0, n);
+			else
+				assertTrue("O's first stone on "+o, n>0);
+		}
+	}
+
+	@Test
+	public void testPlaysLegally() {
+		ParallelQLearningAgent agent=new ParallelQLearningAgent(new Supplier<Agent>() {
+			public Agent get()
+			{
+				return new RandomAgent();
+			}
+		}, 0.1, 4000, 0.9, 4);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(50, results[0]+results[1]+results[2]);
+	}
+
+}
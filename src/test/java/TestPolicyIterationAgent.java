@@ -112,4 +112,40 @@ public class TestPolicyIterationAgent {
 
 	}
 
+	/**
+	 * Storing only canonical states should not change the value of any state
+	 */
+	@Test
+	public void testSymmetricSameValues() {
+		PolicyIterationAgent plain=new PolicyIterationAgent(0.9, false);
+		PolicyIterationAgent symmetric=new PolicyIterationAgent(0.9, true);
+		for (Game g: Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(plain.getValue(g), symmetric.getValue(g), 1e-9);
+	}
+
+	/**
+	 * Modified policy iteration should end with the same values and policy as standard policy iteration, checking
+	 * fewer states for a better action.
+	 */
+	@Test
+	public void testModifiedSameAsStandard() {
+		PolicyIterationAgent standard=new PolicyIterationAgent(0.9);
+		for (int evalSweeps: new int[] {1, 2, 5}) {
+			PolicyIterationAgent modified=PolicyIterationAgent.modified(0.9, evalSweeps);
+			System.out.println(evalSweeps + " sweeps per round: " + modified.getImprovementChecks()
+					+ " improvement checks, against " + standard.getImprovementChecks());
+			assertTrue(modified.getImprovementChecks() < standard.getImprovementChecks());
+
+			for (Game g: Game.generateAllValidGames('X'))
+			{
+				if (g.isTerminal())
+					continue;
+
+				assertEquals(standard.getValue(g), modified.getValue(g), 1e-6);
+				assertEquals(standard.getPolicy().getMove(g), modified.getPolicy().getMove(g));
+			}
+		}
+	}
+
 }
@@ -0,0 +1,36 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.Policy;
+import ticTacToe.PrioritizedSweepingAgent;
+import ticTacToe.TTTMDP;
+import ticTacToe.ValueIterationAgent;
+
+public class TestPrioritizedSweepingAgent {
+
+	/**
+	 * With the same convergence threshold, prioritized sweeping should back up fewer states than value iteration's
+	 * full sweeps, and end with the same values and policy.
+	 */
+	@Test
+	public void testFewerBackupsThanValueIteration() {
+		PrioritizedSweepingAgent ps=new PrioritizedSweepingAgent();
+		ValueIterationAgent vi=new ValueIterationAgent(0.9, 1e-9, false);
+		int decisionStates=new TTTMDP().compile().decisionStates().length;
+		long viBackups=(long) vi.getSweeps()*decisionStates;
+		System.out.println("Prioritized sweeping: "+ps.getBackups()+" backups, value iteration: "+viBackups);
+		assertTrue(ps.getBackups()<viBackups);
+
+		Policy expected=vi.getPolicy();
+		Policy policy=ps.getPolicy();
+		for (Game g: Game.generateAllValidGames('X')) {
+			assertEquals(vi.getValue(g), ps.getValue(g), 1e-6);
+			if (!g.isTerminal())
+				assertEquals(expected.getMove(g), policy.getMove(g));
+		}
+	}
+
+}
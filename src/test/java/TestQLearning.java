@@ -1,11 +1,16 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.junit.Test;
 
 import ticTacToe.AggressiveAgent;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.OpponentModel;
 import ticTacToe.QLearningAgent;
 import ticTacToe.RandomAgent;
+import ticTacToe.ReplayBuffer;
 import ticTacToe.ValueIterationAgent;
 
 public class TestQLearning {
@@ -42,4 +47,98 @@ public class TestQLearning {
 
 	}
 
+	@Test
+	public void testReplay() {
+		System.out.println("With experience replay, against Random Agent:");
+		QLearningAgent.Config config=new QLearningAgent.Config();
+		ReplayBuffer replay=new ReplayBuffer(200000, true);
+		config.setReplay(replay, 8);
+		TestParallelQLearning.CornerAgent opponent=new TestParallelQLearning.CornerAgent(-1);
+		QLearningAgent agent=new QLearningAgent(opponent, 0.1, 20000, 0.9, config);
+		
+		// every transition played is stored, and the buffer is big enough to keep them all. The last one came in with the
+		// priority of the largest TD error replayed, above the initial 1.
+		assertEquals(20000, opponent.episodes);
+		assertEquals(opponent.transitions(), replay.size());
+		assertTrue(replay.priority(replay.size()-1)>1.0);
+		
+		// a bad run still wins most games against a random opponent; how many it loses to a defensive one varies
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 100);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertTrue(results[1]<=10);
+		
+
+	}
+
+	/**
+	 * Checks that training stopped before {@code maxEpisodes}, at the first {@code patience} checkpoints in a row that
+	 * lost no games against any of the {@code opponents} evaluation opponents
+	 */
+	static void assertStoppedAtFirstStreak(QLearningAgent agent, int maxEpisodes, int interval, int patience, int opponents)
+	{
+		List<QLearningAgent.Checkpoint> curve=agent.getLearningCurve();
+		System.out.println("Stopped after " + agent.getEpisodesPlayed() + " episodes");
+		assertTrue(agent.getEpisodesPlayed()<maxEpisodes);
+		assertEquals(agent.getEpisodesPlayed()/interval, curve.size());
+		assertEquals(agent.getEpisodesPlayed(), curve.get(curve.size()-1).getEpisode());
+		
+		int stable=0;
+		for (int i=0; i<curve.size(); i++) {
+			boolean clean=true;
+			for (int o=0; o<opponents; o++) {
+				double lossRate=curve.get(i).getLossRate(o);
+				assertTrue(lossRate>=0 && lossRate<=1);
+				if (lossRate>0)
+					clean=false;
+			}
+			stable=clean ? stable+1 : 0;
+			assertTrue("Kept training after " + patience + " checkpoints without a loss", stable<patience || i==curve.size()-1);
+		}
+		assertEquals(patience, stable);
+	}
+
+	/**
+	 * The runs that learn a weak second move take longer to stop (up to 59000 episodes in 1000 runs, half stop within
+	 * 18000), so the budget is far above that
+	 */
+	@Test
+	public void testEarlyStopping() {
+		System.out.println("With early stopping:");
+		QLearningAgent.Config config=new QLearningAgent.Config();
+		config.setEarlyStopping(1000, 0.0, 0.0);
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 200000, 0.9, config);
+		assertStoppedAtFirstStreak(agent, 200000, 1000, 3, 3);
+	}
+
+	/**
+	 * With a stopping rule every checkpoint meets, training stops at exactly {@code patience} checkpoints
+	 */
+	@Test
+	public void testPatience() {
+		for (int patience=1; patience<=5; patience++) {
+			QLearningAgent.Config config=new QLearningAgent.Config();
+			config.setEarlyStopping(100, 1.0, 0.0);
+			config.setPatience(patience);
+			config.setEvaluation(new OpponentModel[] { OpponentModel.uniform() }, new String[] { "random" }, 1);
+			QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 20000, 0.9, config);
+			assertEquals(100*patience, agent.getEpisodesPlayed());
+			assertEquals(patience, agent.getLearningCurve().size());
+		}
+	}
+
+	/**
+	 * Symmetry, replay and early stopping can be combined, with the caller's own evaluation opponents and patience.
+	 */
+	@Test
+	public void testCombinedOptions() {
+		QLearningAgent.Config config=new QLearningAgent.Config();
+		config.setSymmetric(true);
+		config.setReplay(new ReplayBuffer(100000), 4);
+		config.setEarlyStopping(500, 0.0, 0.0);
+		config.setPatience(4);
+		config.setEvaluation(new OpponentModel[] { OpponentModel.defensive() }, new String[] { "defensive" }, 100);
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 200000, 0.9, config);
+		assertStoppedAtFirstStreak(agent, 200000, 500, 4, 1);
+	}
+
 }
@@ -0,0 +1,83 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.QTable;
+import ticTacToe.StateIndex;
+
+public class TestQTable {
+
+	/**
+	 * Values set through games and moves should be read back through games and moves and through state indexes, at
+	 * {@code 9*s+cell}, and nothing else should be set.
+	 */
+	@Test
+	public void testRoundTrip() throws IllegalMoveException {
+		StateIndex index=StateIndex.get();
+		QTable table=new QTable();
+		Game g=new Game();
+		g.executeMove('X', 1, 1);
+		Move m=new Move('O', 0, 2);
+		int s=index.indexOf(g);
+
+		table.addQValue(g, m, 3.5);
+		assertEquals(3.5, table.getQValue(g, m), 0.0);
+		assertEquals(3.5, table.q(s, 2), 0.0);
+		assertTrue(table.hasState(s));
+		assertEquals(2, table.argmaxQ(s));
+		assertEquals(3.5, table.maxQ(s), 0.0);
+
+		table.setQ(s, 6, 4.0);
+		assertEquals(4.0, table.getQValue(g, new Move('O', 2, 0)), 0.0);
+		assertEquals(6, table.argmaxQ(s));
+
+		// setting null unsets the entry
+		table.addQValue(g, m, null);
+		assertNull(table.getQValue(g, m));
+		assertTrue(Double.isNaN(table.q(s, 2)));
+
+		for (int t=0; t<index.size(); t++)
+			if (t!=s)
+				assertFalse(table.hasState(t));
+	}
+
+	/**
+	 * Entries that were never set are NaN, or null through {@link QTable#getQValue(Game, Move)}
+	 */
+	@Test
+	public void testUnset() {
+		StateIndex index=StateIndex.get();
+		QTable table=new QTable();
+		Game g=new Game();
+		int s=index.indexOf(g);
+
+		assertNull(table.getQValue(g, new Move('X', 0, 0)));
+		for (int cell=0; cell<9; cell++)
+			assertTrue(Double.isNaN(table.q(s, cell)));
+		assertFalse(table.hasState(s));
+		assertEquals(-1, table.argmaxQ(s));
+		assertEquals(Double.NEGATIVE_INFINITY, table.maxQ(s), 0.0);
+	}
+
+	/**
+	 * The table only holds games of the {@link StateIndex}: others read as null and can't be set.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testGameNotInIndex() {
+		// X on (0,0) and (0,1), no O, and X to move: can't be reached from an empty board
+		Game g=Game.inverseHash((6561+2187)*3+1);
+		assertEquals(-1, StateIndex.get().indexOf(g));
+
+		QTable table=new QTable();
+		Move m=new Move('X', 2, 2);
+		assertNull(table.getQValue(g, m));
+		table.addQValue(g, m, 1.0);
+	}
+
+}
@@ -0,0 +1,127 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ticTacToe.ReplayBuffer;
+
+public class TestReplayBuffer {
+
+	/**
+	 * Stores transition {@code i} with every field derived from {@code i}
+	 * @return the slot it went to
+	 */
+	static int add(ReplayBuffer buffer, int i)
+	{
+		return buffer.add(i, i%9, -i, i+1, i%2==0);
+	}
+
+	/**
+	 * Once the ring is full, each new transition overwrites the oldest one, and the rest are kept
+	 */
+	@Test
+	public void testRingOverwritesOldest() {
+		ReplayBuffer buffer=new ReplayBuffer(5);
+		for (int i=0; i<5; i++)
+			assertEquals(i, add(buffer, i));
+		assertEquals(5, buffer.size());
+
+		for (int i=5; i<12; i++) {
+			assertEquals(i%5, add(buffer, i));
+			assertEquals(5, buffer.size());
+		}
+
+		// transitions 7 to 11 are left, transition i in slot i%5
+		for (int i=7; i<12; i++) {
+			int slot=i%5;
+			assertEquals(i, buffer.state(slot));
+			assertEquals(i%9, buffer.cell(slot));
+			assertEquals(-i, buffer.reward(slot), 0.0);
+			assertEquals(i+1, buffer.next(slot));
+			assertEquals(i%2==0, buffer.done(slot));
+		}
+
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		assertEquals(0, add(buffer, 12));
+	}
+
+	/**
+	 * The root of the sum tree is the sum of the priorities, through adds, updates and overwrites. New transitions get
+	 * the largest priority so far.
+	 */
+	@Test
+	public void testSumTreeTotal() {
+		ReplayBuffer buffer=new ReplayBuffer(6, true);
+		assertEquals(0.0, buffer.totalPriority(), 0.0);
+		for (int i=0; i<4; i++)
+			add(buffer, i);
+		assertEquals(4.0, buffer.totalPriority(), 1e-12);
+
+		buffer.updatePriority(0, 0.0);
+		buffer.updatePriority(1, -3.0);
+		buffer.updatePriority(2, 40.0);
+		double p0=Math.pow(0.01, 0.6), p1=Math.pow(3.01, 0.6), p2=Math.pow(40.01, 0.6);
+		assertEquals(p0, buffer.priority(0), 1e-12);
+		assertEquals(p1, buffer.priority(1), 1e-12);
+		assertEquals(p2, buffer.priority(2), 1e-12);
+		assertEquals(p0+p1+p2+1.0, buffer.totalPriority(), 1e-12);
+
+		// slots 4 and 5, then 0 and 1 again, come in with the priority of slot 2
+		for (int i=4; i<8; i++)
+			add(buffer, i);
+		assertEquals(p2, buffer.priority(0), 1e-12);
+		assertEquals(5*p2+1.0, buffer.totalPriority(), 1e-12);
+
+		double sum=0;
+		for (int slot=0; slot<buffer.capacity(); slot++)
+			sum+=buffer.priority(slot);
+		assertEquals(sum, buffer.totalPriority(), 1e-12);
+	}
+
+	/**
+	 * Slots are drawn in proportion to their priorities. Seeded, so the frequencies are the same on every run.
+	 */
+	@Test
+	public void testPrioritizedSampling() {
+		ReplayBuffer buffer=new ReplayBuffer(8, true);
+		for (int i=0; i<5; i++)
+			add(buffer, i);
+		double[] tdErrors={0.0, 1.0, 4.0, 9.0, 25.0};
+		for (int slot=0; slot<5; slot++)
+			buffer.updatePriority(slot, tdErrors[slot]);
+
+		Random random=new Random(42);
+		int draws=200000;
+		int[] counts=new int[8];
+		for (int i=0; i<draws; i++)
+			counts[buffer.sample(random)]++;
+
+		for (int slot=0; slot<5; slot++)
+			assertEquals("slot "+slot, buffer.priority(slot)/buffer.totalPriority(), (double) counts[slot]/draws, 0.005);
+		// the unused slots are never drawn
+		for (int slot=5; slot<8; slot++)
+			assertEquals(0, counts[slot]);
+		assertTrue(counts[4]>counts[3] && counts[3]>counts[2] && counts[2]>counts[1] && counts[1]>counts[0]);
+	}
+
+	@Test
+	public void testUniformSampling() {
+		ReplayBuffer buffer=new ReplayBuffer(8);
+		assertFalse(buffer.isPrioritized());
+		for (int i=0; i<4; i++)
+			add(buffer, i);
+
+		Random random=new Random(42);
+		int[] counts=new int[8];
+		for (int i=0; i<100000; i++)
+			counts[buffer.sample(random)]++;
+		for (int slot=0; slot<4; slot++)
+			assertEquals(0.25, counts[slot]/100000.0, 0.005);
+		assertEquals(0.0, buffer.totalPriority(), 0.0);
+	}
+
+}
@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ticTacToe.AggressiveAgent;
+import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.OpponentModel;
+import ticTacToe.PolicyIterationAgent;
+import ticTacToe.PrioritizedSweepingAgent;
+import ticTacToe.RandomAgent;
+import ticTacToe.RetrogradeAgent;
+import ticTacToe.TTTMDP;
+import ticTacToe.ValueIterationAgent;
+
+public class TestRetrogradeAgent {
+	@Test
+	public void testDefensive() {
+		System.out.println("Against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new RetrogradeAgent(), new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	@Test
+	public void testAggressive() {
+		System.out.println("Against Aggressive Agent:");
+
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new RetrogradeAgent(), new AggressiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+
+	@Test
+	public void testRandom() {
+		System.out.println("Against Random Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new RetrogradeAgent(), new RandomAgent(), 50);
+
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	@Test
+	public void testBestResponseToAggressive() {
+		System.out.println("Best response against Aggressive Agent:");
+		RetrogradeAgent agent=new RetrogradeAgent(0.9, new TTTMDP(OpponentModel.aggressive()));
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+
+
+	}
+
+	@Test
+	public void testPlayingO() {
+		System.out.println("As O against Random Agent:");
+		TTTMDP mdp=new TTTMDP();
+		mdp.setPlanner('O');
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new RandomAgent(), new RetrogradeAgent(0.9, mdp), 50);
+		System.out.println("Wins: " + results[1] + " Losses: " + results[0] + " Draws: " + results[2]);
+		assertEquals(0, results[0]);
+
+
+	}
+
+	/**
+	 * Solving both sides together should give each side the policy it gets when solved on its own.
+	 */
+	@Test
+	public void testBothSidesSameAsSeparately() {
+		TTTMDP xMdp=new TTTMDP();
+		TTTMDP oMdp=new TTTMDP();
+		oMdp.setPlanner('O');
+		TTTMDP jointMdp=new TTTMDP();
+		jointMdp.setPlanner(TTTMDP.BOTH_SIDES);
+		RetrogradeAgent x=new RetrogradeAgent(0.9, xMdp);
+		RetrogradeAgent o=new RetrogradeAgent(0.9, oMdp);
+		RetrogradeAgent joint=new RetrogradeAgent(0.9, jointMdp);
+
+		for (Game g: Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(x.getPolicy().getMove(g), joint.getPolicy().getMove(g));
+
+		for (Game g: Game.generateAllValidGames('O'))
+			if (!g.isTerminal())
+				assertEquals(o.getPolicy().getMove(g), joint.getPolicy().getMove(g));
+	}
+
+	/**
+	 * The iterative agents should converge to the exact policy computed by backward induction.
+	 */
+	@Test
+	public void testSamePolicyAsIterativeAgents() {
+		RetrogradeAgent reference=new RetrogradeAgent();
+		ValueIterationAgent vi=new ValueIterationAgent();
+		PolicyIterationAgent pi=new PolicyIterationAgent();
+		PrioritizedSweepingAgent ps=new PrioritizedSweepingAgent();
+
+		for (Game g: Game.generateAllValidGames('X'))
+		{
+			if (g.isTerminal())
+				continue;
+
+			assertEquals(reference.getPolicy().getMove(g), vi.getPolicy().getMove(g));
+			assertEquals(reference.getPolicy().getMove(g), pi.getPolicy().getMove(g));
+			assertEquals(reference.getPolicy().getMove(g), ps.getPolicy().getMove(g));
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.StateIndex;
+
+public class TestStateIndex {
+
+	/**
+	 * 5478 positions can be reached with X starting and 5478 with O starting
+	 */
+	@Test
+	public void testSize() {
+		StateIndex index=StateIndex.get();
+		assertEquals(10956, index.size());
+		assertEquals(index.size(), index.layerStart(10));
+
+		for (int s=0; s<index.size(); s++)
+			assertEquals(s, index.indexOf(index.game(s)));
+	}
+
+	/**
+	 * The successor table and the stored game states should agree with playing the moves on {@link Game}s.
+	 */
+	@Test
+	public void testSuccessorsMatchSimulatedMoves() throws IllegalMoveException {
+		StateIndex index=StateIndex.get();
+		for (int s=0; s<index.size(); s++) {
+			Game g=index.game(s);
+			assertEquals(g.evaluateGameState(), index.status(s));
+
+			for (int cell=0; cell<9; cell++) {
+				if ((index.legalCells(s)&(1<<cell))==0) {
+					assertEquals(-1, index.successor(s, cell));
+					continue;
+				}
+
+				Game next=g.simulateMove(index.whoseTurn(s), cell/3, cell%3);
+				int t=index.successor(s, cell);
+				assertTrue(t>=0);
+				assertEquals(next.hashCode(), index.hashOf(t));
+				assertEquals(next.evaluateGameState(), index.status(t));
+			}
+		}
+	}
+
+	/**
+	 * Every state should share its canonical form with all 8 of its rotations/reflections, and there are 765 classes
+	 * of positions for each player to start.
+	 */
+	@Test
+	public void testCanonicalForms() {
+		StateIndex index=StateIndex.get();
+		int canonical=0;
+		for (int s=0; s<index.size(); s++) {
+			if (index.isCanonical(s))
+				canonical++;
+
+			int c=index.canonical(s);
+			assertTrue(index.isCanonical(c));
+			assertEquals(c, index.indexOf(index.game(s).canonical()));
+			assertEquals(c, index.indexOf(index.game(s).transform(index.canonicalTransform(s))));
+			for (int t=0; t<8; t++) {
+				Game g=index.game(s).transform(t);
+				assertEquals(c, index.canonical(index.indexOf(g)));
+				assertEquals(index.hashOf(s), g.transform(Game.inverseTransform(t)).hashCode());
+			}
+		}
+		assertEquals(1530, canonical);
+	}
+
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.Outcome;
+import ticTacToe.StateIndex;
+import ticTacToe.TTTEnvironment;
+
+public class TestTTTEnvironment {
+
+	/**
+	 * @return a legal cell for X, picked with {@code random}
+	 */
+	static int randomCell(Game g, Random random)
+	{
+		int empty=g.getEmptyBits();
+		for (int skip=random.nextInt(Integer.bitCount(empty)); skip>0; skip--)
+			empty&=empty-1;
+		return Integer.numberOfTrailingZeros(empty);
+	}
+
+	/**
+	 * Two environments whose opponents play the same moves must see the same transitions and rewards, whether X plays
+	 * through {@link TTTEnvironment#step(int)} or {@link TTTEnvironment#executeMove(Move)}
+	 */
+	@Test
+	public void testStepMatchesExecuteMove() throws IllegalMoveException {
+		StateIndex index=StateIndex.get();
+		TTTEnvironment byCell=new TTTEnvironment(new TestParallelQLearning.CornerAgent(2));
+		TTTEnvironment byMove=new TTTEnvironment(new TestParallelQLearning.CornerAgent(2));
+		Random random=new Random(0);
+
+		for (int episode=0; episode<200; episode++) {
+			while (!byCell.isTerminal()) {
+				int cell=randomCell(byCell.getCurrentGameState(), random);
+				double reward=byCell.step(cell);
+				Outcome o=byMove.executeMove(new Move('X', cell/3, cell%3));
+
+				assertEquals(o.localReward, reward, 0.0);
+				assertEquals(index.indexOf(o.s), byCell.getSourceState());
+				assertEquals(index.indexOf(o.sPrime), byCell.getTargetState());
+				assertEquals(byCell.getSourceState(), byMove.getSourceState());
+				assertEquals(byCell.getTargetState(), byMove.getTargetState());
+				assertEquals(byCell.getTargetState(), byCell.getState());
+			}
+			assertTrue(byMove.isTerminal());
+			byCell.reset();
+			byMove.reset();
+		}
+	}
+
+	/**
+	 * After {@link TTTEnvironment#reset()} the same opponent keeps replying
+	 */
+	@Test
+	public void testResetKeepsOpponent() throws IllegalMoveException {
+		TestParallelQLearning.CornerAgent opponent=new TestParallelQLearning.CornerAgent(8);
+		TTTEnvironment env=new TTTEnvironment(opponent);
+
+		for (int episode=1; episode<=3; episode++) {
+			env.step(0);
+			assertEquals(episode, opponent.episodes);
+			assertEquals('O', env.getCurrentGameState().getCell(2, 2));
+			env.reset();
+			assertEquals(StateIndex.get().indexOfHash(1), env.getState());
+		}
+	}
+
+	/**
+	 * The outcome and its games are the environment's buffers, as {@link TTTEnvironment#executeMove(Move)} documents:
+	 * copies stay as they were while the environment moves on
+	 */
+	@Test
+	public void testOutcomeIsReused() throws IllegalMoveException {
+		TTTEnvironment env=new TTTEnvironment(new TestParallelQLearning.CornerAgent(8));
+		Outcome first=env.executeMove(new Move('X', 0, 0));
+		assertSame(env.getCurrentGameState(), first.sPrime);
+		Game source=new Game(first.s), target=new Game(first.sPrime);
+
+		Outcome second=env.executeMove(new Move('X', 0, 1));
+		assertSame(first, second);
+		assertEquals(Game.FULL_BOARD, source.getEmptyBits());
+		assertEquals(1, target.getXBits());
+		assertEquals(1<<8, target.getOBits());
+		assertEquals(target.getXBits(), second.s.getXBits());
+		assertEquals(target.getOBits(), second.s.getOBits());
+
+		env.reset();
+		assertEquals(Game.FULL_BOARD, second.sPrime.getEmptyBits());
+		assertEquals(1<<8, target.getOBits());
+	}
+
+}
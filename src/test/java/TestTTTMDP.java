@@ -0,0 +1,116 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.StateIndex;
+import ticTacToe.TTTMDP;
+import ticTacToe.TransitionProb;
+
+public class TestTTTMDP {
+
+	/**
+	 * @return the first {@code n} (game, move) pairs with X to move, as games and the cells of the moves
+	 */
+	static List<Game> firstGames(int n, List<Integer> cells) {
+		StateIndex index=StateIndex.get();
+		List<Game> games=new ArrayList<Game>();
+		for (int s=0; s<index.size() && games.size()<n; s++) {
+			if (index.isTerminal(s) || index.whoseTurn(s)!='X')
+				continue;
+			for (int cell=0; cell<9 && games.size()<n; cell++)
+				if ((index.legalCells(s)&(1<<cell))!=0) {
+					games.add(index.game(s));
+					cells.add(cell);
+				}
+		}
+		return games;
+	}
+
+	static void assertSameTransitions(List<TransitionProb> expected, List<TransitionProb> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			TransitionProb e=expected.get(i);
+			TransitionProb a=actual.get(i);
+			assertEquals(e.prob, a.prob, 0.0);
+			assertEquals(e.outcome.localReward, a.outcome.localReward, 0.0);
+			assertEquals(e.outcome.s.hashCode(), a.outcome.s.hashCode());
+			assertEquals(e.outcome.sPrime.hashCode(), a.outcome.sPrime.hashCode());
+			assertEquals(e.outcome.move.x, a.outcome.move.x);
+			assertEquals(e.outcome.move.y, a.outcome.move.y);
+		}
+	}
+
+	/**
+	 * Filling the cache past its bound should evict the least recently used pairs, count every hit, miss and eviction,
+	 * and serve the same transitions as an uncached MDP.
+	 */
+	@Test
+	public void testTransitionCache() {
+		List<Integer> cells=new ArrayList<Integer>();
+		List<Game> games=firstGames(15, cells);
+		TTTMDP uncached=new TTTMDP();
+		TTTMDP mdp=new TTTMDP();
+		mdp.enableTransitionCache(10);
+
+		for (int i=0; i<15; i++) {
+			Game g=games.get(i);
+			Move m=new Move('X', cells.get(i)/3, cells.get(i)%3);
+			assertSameTransitions(uncached.generateTransitions(g, m), mdp.generateTransitions(g, m));
+		}
+		assertEquals(0L, mdp.getCacheHits());
+		assertEquals(15L, mdp.getCacheMisses());
+		assertEquals(5L, mdp.getCacheEvictions());
+		assertEquals(10, mdp.getCacheSize());
+
+		// the last 10 pairs are still cached
+		for (int i=5; i<15; i++) {
+			Game g=games.get(i);
+			Move m=new Move('X', cells.get(i)/3, cells.get(i)%3);
+			assertSameTransitions(uncached.generateTransitions(g, m), mdp.generateTransitions(g, m));
+		}
+		assertEquals(10L, mdp.getCacheHits());
+		assertEquals(15L, mdp.getCacheMisses());
+
+		// the first one was evicted, and coming back evicts the least recently used, pair 5
+		Game first=games.get(0);
+		Move m=new Move('X', cells.get(0)/3, cells.get(0)%3);
+		mdp.generateTransitions(first, m);
+		assertEquals(16L, mdp.getCacheMisses());
+		assertEquals(6L, mdp.getCacheEvictions());
+		Game fifth=games.get(5);
+		mdp.generateTransitions(fifth, new Move('X', cells.get(5)/3, cells.get(5)%3));
+		assertEquals(17L, mdp.getCacheMisses());
+	}
+
+	/**
+	 * Changing a list served from the cache should not change what the cache serves next.
+	 */
+	@Test
+	public void testCachedListsAreCopies() throws IllegalMoveException {
+		List<Integer> cells=new ArrayList<Integer>();
+		Game g=firstGames(1, cells).get(0);
+		Move m=new Move('X', cells.get(0)/3, cells.get(0)%3);
+		TTTMDP mdp=new TTTMDP();
+		mdp.enableTransitionCache(10);
+
+		List<TransitionProb> expected=new TTTMDP().generateTransitions(g, m);
+		for (int i=0; i<2; i++) {
+			List<TransitionProb> served=mdp.generateTransitions(g, m);
+			assertSameTransitions(expected, served);
+			served.get(0).prob=0.0;
+			Game sPrime=served.get(0).outcome.sPrime;
+			int cell=Integer.numberOfTrailingZeros(sPrime.getEmptyBits());
+			sPrime.executeMove('X', cell/3, cell%3);
+			served.clear();
+		}
+		assertSameTransitions(expected, mdp.generateTransitions(g, m));
+		assertEquals(2L, mdp.getCacheHits());
+	}
+
+}
@@ -1,9 +1,11 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import ticTacToe.AggressiveAgent;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
 import ticTacToe.RandomAgent;
 import ticTacToe.ValueIterationAgent;
 
@@ -41,4 +43,46 @@ public class TestValueIteration {
 
 	}
 
+	/**
+	 * Storing only canonical states should not change the value of any state
+	 */
+	@Test
+	public void testSymmetricSameValues() {
+		ValueIterationAgent plain=new ValueIterationAgent(0.9, false);
+		ValueIterationAgent symmetric=new ValueIterationAgent(0.9, true);
+		for (Game g: Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(plain.getValue(g), symmetric.getValue(g), 1e-9);
+	}
+
+	/**
+	 * Splitting the sweeps across threads should not change any value: each state is still updated from the values of
+	 * the previous sweep.
+	 */
+	@Test
+	public void testParallelSameValues() {
+		ValueIterationAgent sequential=new ValueIterationAgent(0.9);
+		ValueIterationAgent parallel=ValueIterationAgent.parallel(0.9, 4);
+		assertEquals(sequential.getSweeps(), parallel.getSweeps());
+		for (Game g: Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(sequential.getValue(g), parallel.getValue(g), 0.0);
+	}
+
+	/**
+	 * In-place (Gauss-Seidel) sweeps should converge to the same values as double-buffered (Jacobi) ones, in no more
+	 * sweeps.
+	 */
+	@Test
+	public void testInPlaceConvergesToSameValues() {
+		ValueIterationAgent jacobi=new ValueIterationAgent(0.9, 1e-9, false);
+		ValueIterationAgent gaussSeidel=new ValueIterationAgent(0.9, 1e-9, true);
+		System.out.println("Jacobi sweeps: " + jacobi.getSweeps() + " Gauss-Seidel sweeps: " + gaussSeidel.getSweeps());
+		assertTrue(gaussSeidel.getSweeps() <= jacobi.getSweeps());
+		assertTrue(gaussSeidel.getResidual() < 1e-9);
+		for (Game g: Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(jacobi.getValue(g), gaussSeidel.getValue(g), 1e-6);
+	}
+
 }